@@ -0,0 +1,261 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scripted mixed workload against a running instance. Signs in the seeded
+ * users, then runs CONCURRENCY workers for DURATION_S seconds, each picking
+ * endpoints according to MIX, and prints throughput and latency percentiles
+ * per endpoint. With RESULTS_CSV set, the same table is written as CSV.
+ *
+ * Environment (defaults in brackets):
+ *   BASE_URL [http://localhost:18080]  DURATION_S [60]  CONCURRENCY [32]
+ *   USERS [100]  PASSWORD [loadtest]   WARMUP_S [10]
+ *   MIX [leaderboard=30,tickers=20,userPortfolios=20,accountData=10,fetchPortfolio=15,analyze=5]
+ *
+ * Usage: java LoadDriver.java
+ */
+public class LoadDriver {
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final Pattern TICKER = Pattern.compile("\"ticker\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final String baseUrl = env("BASE_URL", "http://localhost:18080");
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(8))
+            .build();
+
+    private final List<String> tokens = new ArrayList<>();
+    private final List<Integer> portfolioIds = new ArrayList<>();
+    private final List<String> tickers = new ArrayList<>();
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        new LoadDriver().run();
+    }
+
+    private void run() throws Exception {
+        int users = Integer.parseInt(env("USERS", "100"));
+        int concurrency = Integer.parseInt(env("CONCURRENCY", "32"));
+        int durationSeconds = Integer.parseInt(env("DURATION_S", "60"));
+        int warmupSeconds = Integer.parseInt(env("WARMUP_S", "10"));
+        NavigableMap<Integer, String> mix = parseMix(env("MIX",
+                "leaderboard=30,tickers=20,userPortfolios=20,accountData=10,fetchPortfolio=15,analyze=5"));
+
+        prepare(users);
+        System.out.printf("Prepared %d users, %d portfolios, %d tickers%n", tokens.size(), portfolioIds.size(), tickers.size());
+
+        if (warmupSeconds > 0) {
+            System.out.printf("Warming up for %ds%n", warmupSeconds);
+            drive(mix, concurrency, warmupSeconds);
+            recorders.clear();
+        }
+
+        System.out.printf("Running %d workers for %ds%n", concurrency, durationSeconds);
+        long elapsedNanos = drive(mix, concurrency, durationSeconds);
+        report(elapsedNanos / 1e9);
+    }
+
+    private void prepare(int users) throws Exception {
+        for (int i = 1; i <= users; i++) {
+            String body = "{\"username\":\"user" + i + "\",\"password\":\"" + env("PASSWORD", "loadtest") + "\"}";
+            HttpResponse<String> response = send(post("/auth/signin", null, body));
+            Matcher matcher = TOKEN.matcher(response.body());
+            if (response.statusCode() == 200 && matcher.find()) {
+                tokens.add(matcher.group(1));
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw new IllegalStateException("No user could sign in; is the database seeded?");
+        }
+
+        for (String token : tokens) {
+            collect(send(get("/userPortfolios?limit=100", token)).body(), ID, match -> portfolioIds.add(Integer.parseInt(match)));
+        }
+        collect(send(get("/tickers?limit=100", tokens.get(0))).body(), TICKER, tickers::add);
+    }
+
+    private long drive(NavigableMap<Integer, String> mix, int concurrency, int seconds) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        int totalWeight = mix.lastKey();
+
+        for (int w = 0; w < concurrency; w++) {
+            workers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    String endpoint = mix.higherEntry(random.nextInt(totalWeight)).getValue();
+                    String token = tokens.get(random.nextInt(tokens.size()));
+                    execute(endpoint, token, random);
+                }
+            });
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(seconds + 120L, TimeUnit.SECONDS);
+        return System.nanoTime() - start;
+    }
+
+    private void execute(String endpoint, String token, ThreadLocalRandom random) {
+        HttpRequest request = switch (endpoint) {
+            case "leaderboard" -> get("/leaderboard", token);
+            case "tickers" -> get("/tickers?prefix=" + (char) ('A' + random.nextInt(26)), token);
+            case "userPortfolios" -> get("/userPortfolios", token);
+            case "accountData" -> get("/accountData", token);
+            case "fetchPortfolio" -> post("/fetchPortfolio", token,
+                    Integer.toString(portfolioIds.get(random.nextInt(portfolioIds.size()))));
+            case "analyze" -> post("/analyze", token, randomPortfolio(random));
+            default -> throw new IllegalArgumentException("Unknown endpoint in MIX: " + endpoint);
+        };
+
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = send(request).statusCode();
+        } catch (Exception e) {
+            status = -1;
+        }
+        recorders.computeIfAbsent(endpoint, e -> new Recorder()).record(System.nanoTime() - start, status);
+    }
+
+    private String randomPortfolio(ThreadLocalRandom random) {
+        StringBuilder assets = new StringBuilder();
+        int count = 2 + random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                assets.append(',');
+            }
+            assets.append("{\"ticker\":\"").append(tickers.get(random.nextInt(tickers.size())))
+                    .append("\",\"weight\":").append(1 + random.nextInt(20)).append('}');
+        }
+        return "{\"name\":\"load\",\"currentValue\":10000,\"assets\":[" + assets + "]}";
+    }
+
+    private void report(double seconds) throws Exception {
+        String header = String.format("%-16s %8s %8s %6s %6s %9s %9s %9s %9s %9s",
+                "endpoint", "requests", "req/s", "errors", "429s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        StringBuilder csv = new StringBuilder("endpoint,requests,rps,errors,throttled,p50_ms,p90_ms,p99_ms,p999_ms,max_ms\n");
+
+        System.out.println();
+        System.out.println(header);
+        for (Map.Entry<String, Recorder> entry : new TreeMap<>(recorders).entrySet()) {
+            Recorder r = entry.getValue();
+            long[] sorted = r.sortedLatencies();
+            double[] row = {
+                    sorted.length / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6
+            };
+            System.out.printf("%-16s %8d %8.1f %6d %6d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    entry.getKey(), sorted.length, row[0], r.errors(), r.throttled(), row[1], row[2], row[3], row[4], row[5]);
+            csv.append(String.format(Locale.ROOT, "%s,%d,%.2f,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f%n",
+                    entry.getKey(), sorted.length, row[0], r.errors(), r.throttled(), row[1], row[2], row[3], row[4], row[5]));
+        }
+
+        String csvPath = System.getenv("RESULTS_CSV");
+        if (csvPath != null && !csvPath.isBlank()) {
+            Files.writeString(Path.of(csvPath), csv);
+            System.out.println("\nWrote " + csvPath);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private HttpRequest get(String path, String token) {
+        return request(path, token).GET().build();
+    }
+
+    private HttpRequest post(String path, String token, String body) {
+        return request(path, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(60));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void collect(String body, Pattern pattern, java.util.function.Consumer<String> sink) {
+        Matcher matcher = pattern.matcher(body);
+        while (matcher.find()) {
+            sink.accept(matcher.group(1));
+        }
+    }
+
+    private static NavigableMap<Integer, String> parseMix(String mix) {
+        NavigableMap<Integer, String> cumulative = new TreeMap<>();
+        int total = 0;
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split("=");
+            int weight = Integer.parseInt(kv[1]);
+            if (weight > 0) {
+                total += weight;
+                cumulative.put(total, kv[0]);
+            }
+        }
+        return cumulative;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    private static class Recorder {
+        private long[] latencies = new long[1024];
+        private int size;
+        private int errors;
+        private int throttled;
+
+        synchronized void record(long nanos, int status) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+            if (status == 429) {
+                throttled++;
+            } else if (status < 200 || status >= 300) {
+                errors++;
+            }
+        }
+
+        synchronized long[] sortedLatencies() {
+            long[] copy = Arrays.copyOf(latencies, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        synchronized int errors() {
+            return errors;
+        }
+
+        synchronized int throttled() {
+            return throttled;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Stand-in for the Polygon aggregates endpoint used by MarketDataFetcher:
+ *
+ *   GET /v2/aggs/ticker/{ticker}/range/1/day/{from}/{to}?apiKey=...
+ *
+ * Returns one deterministic daily bar per weekday in the range and enforces
+ * a token-bucket rate limit, answering 429 once it is exhausted.
+ *
+ * Usage: java MockPolygonServer.java [port] [requestsPerMinute] [latencyMs]
+ */
+public class MockPolygonServer {
+    private static final String PREFIX = "/v2/aggs/ticker/";
+
+    private final double ratePerMilli;
+    private final double burst;
+    private final long latencyMs;
+    private double tokens;
+    private long lastRefill = System.currentTimeMillis();
+
+    private long served;
+    private long limited;
+
+    MockPolygonServer(int requestsPerMinute, long latencyMs) {
+        this.ratePerMilli = requestsPerMinute / 60000.0;
+        this.burst = Math.max(1, requestsPerMinute);
+        this.tokens = burst;
+        this.latencyMs = latencyMs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18081;
+        int requestsPerMinute = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        MockPolygonServer mock = new MockPolygonServer(requestsPerMinute, latencyMs);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PREFIX, mock::handle);
+        server.createContext("/stats", exchange -> mock.respond(exchange, 200, mock.stats()));
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.start();
+
+        System.out.println("Mock aggregates API on :" + port + " (" + requestsPerMinute + " req/min, " + latencyMs + " ms latency)");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String query = uri.getQuery() == null ? "" : uri.getQuery();
+
+        if (!query.contains("apiKey=")) {
+            respond(exchange, 401, "{\"status\":\"ERROR\",\"error\":\"missing apiKey\"}");
+            return;
+        }
+        if (!tryAcquire()) {
+            respond(exchange, 429, "{\"status\":\"ERROR\",\"error\":\"You've exceeded the maximum requests per minute\"}");
+            return;
+        }
+
+        // {ticker}/range/1/day/{from}/{to}
+        String[] parts = uri.getPath().substring(PREFIX.length()).split("/");
+        if (parts.length != 6) {
+            respond(exchange, 404, "{\"status\":\"NOT_FOUND\"}");
+            return;
+        }
+
+        String ticker = parts[0];
+        LocalDate from = LocalDate.parse(parts[4]);
+        LocalDate to = LocalDate.parse(parts[5]);
+
+        sleep(latencyMs);
+        respond(exchange, 200, aggregates(ticker, from, to));
+    }
+
+    private static String aggregates(String ticker, LocalDate from, LocalDate to) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"ticker\":\"").append(ticker).append("\",\"status\":\"OK\",\"adjusted\":true,\"results\":[");
+
+        int count = 0;
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+            Random random = new Random(ticker.hashCode() * 31L + date.toEpochDay());
+            double close = 50 + 100 * random.nextDouble();
+            long timestamp = date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+            if (count++ > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.ROOT,
+                    "{\"v\":%d,\"o\":%.4f,\"c\":%.4f,\"h\":%.4f,\"l\":%.4f,\"t\":%d,\"n\":%d}",
+                    1000 + random.nextInt(100000), close * 0.99, close, close * 1.01, close * 0.98, timestamp, 100 + random.nextInt(1000)));
+        }
+
+        json.append("],\"resultsCount\":").append(count).append(",\"queryCount\":").append(count).append('}');
+        return json.toString();
+    }
+
+    private synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerMilli);
+        lastRefill = now;
+
+        if (tokens < 1) {
+            limited++;
+            return false;
+        }
+        tokens -= 1;
+        served++;
+        return true;
+    }
+
+    private synchronized String stats() {
+        return "{\"served\":" + served + ",\"rateLimited\":" + limited + "}";
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
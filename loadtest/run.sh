@@ -0,0 +1,97 @@
+#!/usr/bin/env bash
+# End-to-end load run: local Postgres, mock aggregates API, the application
+# built from this tree, synthetic data, then a mixed workload.
+#
+# Scale and workload are configured through environment variables, e.g.
+#   TICKERS=500 DAYS=250 USERS=200 PORTFOLIOS_PER_USER=50 \
+#   CONCURRENCY=64 DURATION_S=120 loadtest/run.sh
+#
+# Set INGEST=1 to also trigger /market/update against the mock during the run.
+# Set REPLICA=1 to add a streaming replica and route reads to it.
+set -euo pipefail
+
+HERE="$(cd "$(dirname "$0")" && pwd)"
+ROOT="$(cd "$HERE/.." && pwd)"
+
+PG_PORT="${PG_PORT:-55432}"
+APP_PORT="${APP_PORT:-18080}"
+MOCK_PORT="${MOCK_PORT:-18081}"
+MOCK_RATE_PER_MIN="${MOCK_RATE_PER_MIN:-300}"
+TICKERS="${TICKERS:-50}"
+DAYS="${DAYS:-250}"
+USERS="${USERS:-100}"
+PORTFOLIOS_PER_USER="${PORTFOLIOS_PER_USER:-20}"
+API_KEY="loadtest-api-key"
+REPLICA_PORT="${REPLICA_PORT:-55433}"
+LOG_DIR="${LOG_DIR:-$HERE/out}"
+
+COMPOSE_FILES=(-f "$HERE/docker-compose.yml")
+DB_REPLICA_URLS=""
+if [ -n "${REPLICA:-}" ]; then
+    COMPOSE_FILES+=(-f "$HERE/docker-compose.replica.yml")
+    DB_REPLICA_URLS="jdbc:postgresql://localhost:$REPLICA_PORT/pmr"
+fi
+
+mkdir -p "$LOG_DIR"
+PIDS=()
+
+cleanup() {
+    for pid in "${PIDS[@]}"; do kill "$pid" 2>/dev/null || true; done
+    if [ -z "${KEEP_DB:-}" ]; then
+        PG_PORT="$PG_PORT" REPLICA_PORT="$REPLICA_PORT" docker compose "${COMPOSE_FILES[@]}" down -v >/dev/null 2>&1 || true
+    fi
+}
+trap cleanup EXIT
+
+wait_for() {
+    local url="$1" name="$2"
+    for _ in $(seq 300); do
+        if curl -fs "$url" >/dev/null 2>&1; then return 0; fi
+        sleep 0.2
+    done
+    echo "$name did not come up; see $LOG_DIR" >&2
+    exit 1
+}
+
+echo "==> Starting Postgres on :$PG_PORT${REPLICA:+, replica on :$REPLICA_PORT}"
+PG_PORT="$PG_PORT" REPLICA_PORT="$REPLICA_PORT" docker compose "${COMPOSE_FILES[@]}" up -d --wait
+
+echo "==> Starting mock aggregates API on :$MOCK_PORT"
+java "$HERE/MockPolygonServer.java" "$MOCK_PORT" "$MOCK_RATE_PER_MIN" 50 > "$LOG_DIR/mock.log" 2>&1 &
+PIDS+=($!)
+
+echo "==> Building application"
+(cd "$ROOT" && mvn -B -q package -DskipTests)
+
+echo "==> Starting application on :$APP_PORT"
+DB_URL="jdbc:postgresql://localhost:$PG_PORT/pmr" DB_USER=pmr DB_PASS=pmr \
+DB_REPLICA_URLS="$DB_REPLICA_URLS" \
+SECRET_KEY="loadtest-secret-key-that-is-at-least-256-bits-long!!" \
+FRONTEND_URL="http://localhost" \
+POLYGON_API_KEY="$API_KEY" \
+POLYGON_BASE_URL="http://localhost:$MOCK_PORT" \
+POLYGON_REQUEST_INTERVAL_MS="${POLYGON_REQUEST_INTERVAL_MS:-0}" \
+ADMIN_API_KEY="$API_KEY" \
+    java ${JAVA_OPTS:-} -jar "$ROOT/target/pmr-1.0-SNAPSHOT.jar" --server.port="$APP_PORT" \
+    --logging.level.org.springframework.security=INFO --spring.jpa.show-sql=false \
+    > "$LOG_DIR/app.log" 2>&1 &
+PIDS+=($!)
+wait_for "http://localhost:$APP_PORT/health" "application"
+
+echo "==> Seeding $TICKERS tickers x $DAYS days, $USERS users x $PORTFOLIOS_PER_USER portfolios"
+PGPASSWORD=pmr psql -h localhost -p "$PG_PORT" -U pmr -d pmr -X -q \
+    -v tickers="$TICKERS" -v days="$DAYS" -v users="$USERS" -v portfolios_per_user="$PORTFOLIOS_PER_USER" \
+    -f "$HERE/seed.sql"
+
+if [ -n "${INGEST:-}" ]; then
+    echo "==> Triggering ingestion"
+    curl -fs -X POST -H "Authorization: Bearer $API_KEY" "http://localhost:$APP_PORT/market/update" \
+        > "$LOG_DIR/ingest.log" 2>&1 &
+    PIDS+=($!)
+fi
+
+echo "==> Running workload"
+BASE_URL="http://localhost:$APP_PORT" USERS="$USERS" RESULTS_CSV="${RESULTS_CSV:-$LOG_DIR/results.csv}" \
+    java "$HERE/LoadDriver.java"
+
+echo "==> Mock API: $(curl -fs "http://localhost:$MOCK_PORT/stats")"
@@ -0,0 +1,132 @@
+-- Synthetic data set for the load harness. Run after the application has
+-- applied its migrations. Scale is set with psql variables:
+--   psql -v tickers=50 -v days=250 -v users=100 -v portfolios_per_user=20 -f seed.sql
+-- random() is seeded (override with -v seed=<-1..1>) so the same variables
+-- always produce the same data set and benchmark runs stay comparable.
+\set ON_ERROR_STOP on
+\if :{?seed}
+\else
+\set seed 0.42
+\endif
+
+SELECT setseed(:seed);
+
+CREATE EXTENSION IF NOT EXISTS pgcrypto;
+
+TRUNCATE portfolios, user_stats, historical_prices, trading_calendar, assets,
+         ticker_returns, ticker_stats, ingestion_watermarks, table_versions,
+         ingestion_progress, ingestion_lease, ingestion_runs, users RESTART IDENTITY CASCADE;
+
+-- Rows from migrations V5 and V12. Versions restart from the clock rather
+-- than 1 so no node's cached copy of the old data can match them.
+INSERT INTO table_versions (table_name, version)
+SELECT t, (extract(epoch FROM clock_timestamp()) * 1000)::bigint
+FROM unnest(ARRAY['assets', 'historical_prices']) t;
+
+INSERT INTO assets (ticker)
+SELECT 'T' || lpad(i::text, 4, '0')
+FROM generate_series(1, :tickers) i;
+
+CREATE TEMP TABLE seed_dates AS
+SELECT d::date AS date
+FROM generate_series(current_date - (:days * 7 / 5 + 14), current_date - 1, interval '1 day') d
+WHERE extract(isodow FROM d) < 6
+ORDER BY d DESC
+LIMIT :days;
+
+-- Geometric random walk per ticker.
+INSERT INTO historical_prices (ticker, date, close)
+SELECT ticker, date,
+       round((100 * exp(sum((random() - 0.5) * 0.04) OVER (PARTITION BY ticker ORDER BY date)))::numeric, 4)::float8
+FROM assets CROSS JOIN seed_dates;
+
+INSERT INTO trading_calendar (date, ticker_count)
+SELECT date, COUNT(*) FROM historical_prices GROUP BY date;
+
+-- Same derivation as migration V9.
+WITH priced AS (
+    SELECT ticker, date, close, LAG(close) OVER (PARTITION BY ticker ORDER BY date) AS prev
+    FROM historical_prices
+), returns AS (
+    SELECT ticker, date, close / prev - 1 AS simple_return, ln(close / prev) AS log_return
+    FROM priced
+    WHERE prev > 0 AND close > 0
+)
+INSERT INTO ticker_returns (ticker, date, simple_return, log_return, volatility_20d)
+SELECT ticker, date, simple_return, log_return,
+       CASE WHEN COUNT(*) OVER w = 20 THEN stddev_samp(simple_return) OVER w END
+FROM returns
+WINDOW w AS (PARTITION BY ticker ORDER BY date ROWS BETWEEN 19 PRECEDING AND CURRENT ROW);
+
+INSERT INTO ticker_stats (ticker, num_returns, first_date, last_date, mean_return, volatility, mean_log_return)
+SELECT ticker, COUNT(*), MIN(date), MAX(date), AVG(simple_return), stddev_samp(simple_return), AVG(log_return)
+FROM ticker_returns
+GROUP BY ticker;
+
+-- Every user's password is "loadtest".
+INSERT INTO users (username, password, role)
+SELECT 'user' || i, h.hash, 'USER'
+FROM generate_series(1, :users) i,
+     (SELECT crypt('loadtest', gen_salt('bf', 10)) AS hash) h;
+
+CREATE TEMP TABLE seed_calendar AS
+SELECT array_agg(date ORDER BY date) AS dates, count(*) AS n FROM seed_dates;
+
+INSERT INTO portfolios (
+    name, user_id, trading_dates, daily_values, daily_returns,
+    cumulative_return, mean_return, volatility, sharpe_ratio, value_at_risk,
+    assets, created_at
+)
+SELECT 'Portfolio ' || k,
+       u.id,
+       c.dates,
+       v.daily_values,
+       r.daily_returns,
+       v.daily_values[c.n] / v.daily_values[1] - 1,
+       r.mean_return,
+       r.volatility,
+       (random() * 3 - 0.5),
+       round((random() * 400)::numeric, 2)::float8,
+       a.assets,
+       now() - (k || ' hours')::interval
+FROM users u
+CROSS JOIN generate_series(1, :portfolios_per_user) k
+CROSS JOIN seed_calendar c
+CROSS JOIN LATERAL (
+    SELECT array_agg(10000 * (1 + 0.0003 * g + 0.02 * sin(g / 7.0 + u.id + k)) ORDER BY g) AS daily_values
+    FROM generate_series(1, c.n) g
+) v
+CROSS JOIN LATERAL (
+    SELECT array_agg(x ORDER BY g) AS daily_returns, avg(x) AS mean_return, stddev_samp(x) AS volatility
+    FROM (SELECT g, v.daily_values[g + 1] / v.daily_values[g] - 1 AS x FROM generate_series(1, c.n - 1) g) t
+) r
+CROSS JOIN LATERAL (
+    SELECT jsonb_agg(jsonb_build_object('ticker', ticker, 'weight', weight)) AS assets
+    FROM (
+        SELECT ticker, (1 + abs(hashtext(ticker || u.id || k)) % 20)::float8 AS weight
+        FROM assets
+        ORDER BY md5(ticker || u.id || '-' || k)
+        LIMIT 3 + (u.id + k) % 6
+    ) picked
+) a;
+
+-- Same derivations as migrations V3, V4 and V10.
+UPDATE portfolios p
+SET start_date    = p.trading_dates[array_lower(p.trading_dates, 1)],
+    end_date      = p.trading_dates[array_upper(p.trading_dates, 1)],
+    num_assets    = jsonb_array_length(p.assets::jsonb),
+    asset_summary = (SELECT string_agg(ticker, ', ' ORDER BY weight DESC, ticker)
+                     FROM (SELECT a ->> 'ticker' AS ticker, (a ->> 'weight')::float8 AS weight
+                           FROM jsonb_array_elements(p.assets::jsonb) a
+                           ORDER BY weight DESC, ticker
+                           LIMIT 5) top),
+    tickers       = ARRAY(SELECT DISTINCT upper(a ->> 'ticker')
+                          FROM jsonb_array_elements(p.assets::jsonb) a
+                          ORDER BY 1);
+
+INSERT INTO user_stats (user_id, num_portfolios, best_sharpe, sharpe_sum, best_value_at_risk, last_analysis_at)
+SELECT user_id, COUNT(*), MAX(sharpe_ratio), SUM(sharpe_ratio), MIN(value_at_risk), MAX(created_at)
+FROM portfolios
+GROUP BY user_id;
+
+VACUUM ANALYZE;
@@ -0,0 +1,56 @@
+import pmr.engine.analysis.CorrelatedPaths;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times CorrelatedPaths.simulate on a synthetic covariance, the core of
+ * POST /simulate. Run through scripts/simulate-benchmark.sh.
+ *
+ * Usage: SimulateBenchmark <tickers> <horizon> <paths> <runs>
+ */
+public class SimulateBenchmark {
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int horizon = Integer.parseInt(args[1]);
+        int paths = Integer.parseInt(args[2]);
+        int runs = Integer.parseInt(args[3]);
+
+        // One market factor plus idiosyncratic noise: a dense, positive
+        // definite covariance like real equity returns.
+        Random random = new Random(1);
+        double[] beta = new double[n];
+        double[] mean = new double[n];
+        double[] exposures = new double[n];
+        for (int i = 0; i < n; i++) {
+            beta[i] = 0.5 + random.nextDouble();
+            mean[i] = 0.0004 * random.nextDouble();
+            exposures[i] = 1.0 / n;
+        }
+        double[] covariance = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                covariance[i * n + j] = beta[i] * beta[j] * 1e-4 + (i == j ? 2e-4 : 0.0);
+            }
+        }
+        double[] cholesky = CorrelatedPaths.cholesky(covariance, n);
+
+        int tracked = Math.min(paths, 16_384);
+        double[] last = new double[paths];
+        double[] daily = new double[horizon * tracked];
+
+        long[] millis = new long[runs + 1];
+        for (int r = 0; r <= runs; r++) {
+            long start = System.nanoTime();
+            CorrelatedPaths.simulate(mean, cholesky, exposures, horizon, paths, r, last, tracked, daily);
+            millis[r] = (System.nanoTime() - start) / 1_000_000;
+        }
+
+        // Run 0 is warm-up.
+        long[] timed = Arrays.copyOfRange(millis, 1, runs + 1);
+        Arrays.sort(timed);
+        System.out.printf("cpus=%d tickers=%d horizon=%d paths=%d min=%dms median=%dms max=%dms%n",
+                Runtime.getRuntime().availableProcessors(), n, horizon, paths,
+                timed[0], timed[timed.length / 2], timed[timed.length - 1]);
+    }
+}
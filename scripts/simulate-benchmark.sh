@@ -0,0 +1,31 @@
+#!/usr/bin/env bash
+# Times the path simulation behind POST /simulate at several core counts,
+# by capping the common fork-join pool the path blocks run on.
+#
+# Usage: scripts/simulate-benchmark.sh [tickers] [horizon] [paths]
+#   CORES  space-separated core counts to try (default: 1 2 4 ... up to nproc)
+#   RUNS   timed runs per core count, after one warm-up (default: 5)
+set -euo pipefail
+
+TICKERS="${1:-50}"
+HORIZON="${2:-21}"
+PATHS="${3:-100000}"
+RUNS="${RUNS:-5}"
+
+cd "$(git rev-parse --show-toplevel)"
+mvn -B -q compile
+
+if [[ -z "${CORES:-}" ]]; then
+    CORES=""
+    for ((c = 1; c < $(nproc); c *= 2)); do
+        CORES+="$c "
+    done
+    CORES+="$(nproc)"
+fi
+
+for cores in $CORES; do
+    # The common pool runs parallelism workers plus the calling thread.
+    java -XX:ActiveProcessorCount="$cores" \
+         -Djava.util.concurrent.ForkJoinPool.common.parallelism="$(( cores > 1 ? cores - 1 : 1 ))" \
+         -cp target/classes scripts/SimulateBenchmark.java "$TICKERS" "$HORIZON" "$PATHS" "$RUNS"
+done
@@ -0,0 +1,57 @@
+#!/usr/bin/env bash
+# Compares time to first successful /health between the current Dockerfile
+# and the image built from a baseline git ref.
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+#   BASELINE_REF  git ref to build the comparison image from (default: origin/main)
+#   ENV_FILE      docker --env-file with DB_URL, DB_USER, DB_PASS, SECRET_KEY,
+#                 FRONTEND_URL, POLYGON_API_KEY (default: .env)
+set -euo pipefail
+
+RUNS="${1:-5}"
+BASELINE_REF="${BASELINE_REF:-origin/main}"
+ENV_FILE="${ENV_FILE:-.env}"
+PORT="${PORT:-18080}"
+
+cd "$(git rev-parse --show-toplevel)"
+
+echo "Building pmr:baseline from $BASELINE_REF"
+git archive --format=tar "$BASELINE_REF" | docker build -q -t pmr:baseline - >/dev/null
+
+echo "Building pmr:current from working tree"
+docker build -q -t pmr:current . >/dev/null
+
+now_ms() {
+    date +%s%3N
+}
+
+time_to_health() {
+    local image="$1" container start
+    start="$(now_ms)"
+    container="$(docker run -d --rm --env-file "$ENV_FILE" -p "$PORT:8080" "$image")"
+
+    until curl -fs "http://localhost:$PORT/health" >/dev/null 2>&1; do
+        if ! docker inspect "$container" >/dev/null 2>&1; then
+            echo "container for $image exited before becoming healthy" >&2
+            return 1
+        fi
+        sleep 0.05
+    done
+
+    echo $(( $(now_ms) - start ))
+    docker stop -t 1 "$container" >/dev/null
+}
+
+report() {
+    local image="$1" samples=()
+    for _ in $(seq "$RUNS"); do
+        samples+=("$(time_to_health "$image")")
+    done
+    printf '%s\n' "${samples[@]}" | sort -n | awk -v image="$image" '
+        { v[NR] = $1; sum += $1 }
+        END { printf "%-14s runs=%d min=%dms median=%dms mean=%dms max=%dms\n",
+              image, NR, v[1], v[int((NR + 1) / 2)], sum / NR, v[NR] }'
+}
+
+report pmr:baseline
+report pmr:current
@@ -0,0 +1,21 @@
+package pmr.engine;
+
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class FlywayConfig {
+
+    // Read at runtime rather than through spring.flyway.enabled, which AOT
+    // processing fixes at build time. The image build sets it for the CDS
+    // training run, which has no database to migrate.
+    @Bean
+    public FlywayMigrationStrategy migrationStrategy() {
+        return flyway -> {
+            if (!"true".equalsIgnoreCase(System.getenv("PMR_SKIP_MIGRATIONS"))) {
+                flyway.migrate();
+            }
+        };
+    }
+}
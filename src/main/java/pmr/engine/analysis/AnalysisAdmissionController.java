@@ -0,0 +1,164 @@
+package pmr.engine.analysis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import pmr.engine.model.AnalysisLimits;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps how many analyses run at once, globally and per user. Requests over
+ * the cap wait in a bounded queue for up to maxWaitMillis; once the queue
+ * is full, or the wait runs out, they are rejected straight away.
+ */
+@Component
+public class AnalysisAdmissionController {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<Long, Integer> activeByUser = new HashMap<>();
+
+    private AnalysisLimits limits;
+    private int active;
+    private int queued;
+    private double averageSeconds = 1.0;
+
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+    private final Timer waitTimer;
+
+    public AnalysisAdmissionController(MeterRegistry registry) {
+        this.limits = new AnalysisLimits(
+                envInt("ANALYSIS_MAX_CONCURRENT", Runtime.getRuntime().availableProcessors()),
+                envInt("ANALYSIS_MAX_PER_USER", 2),
+                envInt("ANALYSIS_QUEUE_CAPACITY", 32),
+                envInt("ANALYSIS_MAX_WAIT_MS", 10000)
+        );
+
+        Gauge.builder("analysis.admission.active", () -> active).register(registry);
+        Gauge.builder("analysis.admission.queued", () -> queued).register(registry);
+        Gauge.builder("analysis.admission.limit", () -> limits.maxConcurrent()).tag("limit", "global").register(registry);
+        Gauge.builder("analysis.admission.limit", () -> limits.maxPerUser()).tag("limit", "per_user").register(registry);
+        Gauge.builder("analysis.admission.limit", () -> limits.queueCapacity()).tag("limit", "queue").register(registry);
+
+        rejectedQueueFull = Counter.builder("analysis.admission.rejected").tag("reason", "queue_full").register(registry);
+        rejectedTimeout = Counter.builder("analysis.admission.rejected").tag("reason", "timeout").register(registry);
+        waitTimer = Timer.builder("analysis.admission.wait").register(registry);
+    }
+
+    public Permit acquire(long userId) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (!canRun(userId)) {
+                if (queued >= limits.queueCapacity()) {
+                    rejectedQueueFull.increment();
+                    throw new AnalysisRejectedException("Analysis queue is full", retryAfterSeconds());
+                }
+
+                queued++;
+                try {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(limits.maxWaitMillis());
+                    while (!canRun(userId)) {
+                        if (remaining <= 0) {
+                            rejectedTimeout.increment();
+                            throw new AnalysisRejectedException("Timed out waiting for an analysis slot", retryAfterSeconds());
+                        }
+                        remaining = released.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AnalysisRejectedException("Interrupted waiting for an analysis slot", retryAfterSeconds());
+                } finally {
+                    queued--;
+                }
+            }
+
+            active++;
+            activeByUser.merge(userId, 1, Integer::sum);
+        } finally {
+            lock.unlock();
+        }
+
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit(userId, System.nanoTime());
+    }
+
+    public AnalysisLimits getLimits() {
+        lock.lock();
+        try {
+            return limits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setLimits(AnalysisLimits newLimits) {
+        if (newLimits.maxConcurrent() < 1 || newLimits.maxPerUser() < 1
+                || newLimits.queueCapacity() < 0 || newLimits.maxWaitMillis() < 0) {
+            throw new IllegalArgumentException("Analysis limits must be positive");
+        }
+
+        lock.lock();
+        try {
+            limits = newLimits;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canRun(long userId) {
+        return active < limits.maxConcurrent()
+                && activeByUser.getOrDefault(userId, 0) < limits.maxPerUser();
+    }
+
+    private long retryAfterSeconds() {
+        double slotsAhead = (double) (queued + 1) / limits.maxConcurrent();
+        return Math.max(1, (long) Math.ceil(averageSeconds * slotsAhead));
+    }
+
+    private void release(long userId, long startedNanos) {
+        double seconds = (System.nanoTime() - startedNanos) / 1e9;
+
+        lock.lock();
+        try {
+            active--;
+            activeByUser.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+            averageSeconds = 0.8 * averageSeconds + 0.2 * seconds;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public class Permit implements AutoCloseable {
+        private final long userId;
+        private final long startedNanos;
+        private boolean closed;
+
+        private Permit(long userId, long startedNanos) {
+            this.userId = userId;
+            this.startedNanos = startedNanos;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(userId, startedNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package pmr.engine.analysis;
+
+import org.springframework.stereotype.Component;
+
+import pmr.engine.service.ClosingPriceSink;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stateless numeric core of the analysis pipeline. Works on a dense
+ * day-major price matrix: daily values are a weights x prices product,
+ * then returns, cumulative return, mean and volatility come in one pass. Per-call working memory comes
+ * from a per-thread {@link Scratch} that only grows, so steady-state
+ * analyses allocate nothing here beyond their output arrays.
+ */
+@Component
+public class AnalysisEngine {
+    private static final int NUM_TRADING_DAYS = 252;
+    private static final double ANNUAL_RISK_FREE_RATE = 0.05;
+    private static final double DAILY_RISK_FREE_RATE = Math.pow(1 + ANNUAL_RISK_FREE_RATE, 1.0 / NUM_TRADING_DAYS) - 1;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public record Metrics(double cumulativeReturn, double meanReturn, double volatility, double sharpe) {
+    }
+
+    /**
+     * Scratch space for one analysis on the calling thread. {@code prices}
+     * is day-major: the close of column c on day d is at d * columns + c.
+     * Cells start out as NaN; call {@link Scratch#fillGaps()} once the
+     * closes are loaded.
+     */
+    public Scratch scratch(List<LocalDate> dates, int columns) {
+        Scratch s = scratch.get();
+        s.reset(dates, columns);
+        return s;
+    }
+
+    /**
+     * Revalues one portfolio against the price matrix, then derives returns,
+     * cumulative return, mean and volatility in a single pass over the
+     * daily values. {@code weights[c]} is the total weight on price-matrix
+     * column c.
+     */
+    public Metrics run(Scratch s, double[] weights, double[] dailyValues, double[] dailyReturns) {
+        int numDays = s.days;
+        revalue(weights, s.prices, numDays, s.columns, dailyValues);
+
+        double cumulativeProduct = 1.0;
+        double mean = 0.0;
+        double m2 = 0.0;
+        int n = 0;
+
+        for (int d = 1; d < numDays; d++) {
+            double previousValue = dailyValues[d - 1];
+            double r = (dailyValues[d] - previousValue) / previousValue;
+            dailyReturns[d - 1] = r;
+            cumulativeProduct *= (1 + r);
+
+            n++;
+            double delta = r - mean;
+            mean += delta / n;
+            m2 += delta * (r - mean);
+        }
+
+        double meanReturn = n > 0 ? mean : Double.NaN;
+        double volatility = n > 1 ? Math.sqrt(m2 / (n - 1)) : (n == 1 ? 0.0 : Double.NaN);
+        double sharpe = (meanReturn - DAILY_RISK_FREE_RATE) / volatility * Math.sqrt(NUM_TRADING_DAYS);
+
+        return new Metrics(cumulativeProduct - 1, meanReturn, volatility, sharpe);
+    }
+
+    // out[d] is the dot product of weights with price row d, summed in
+    // column order.
+    private static void revalue(double[] weights, double[] prices, int days, int columns, double[] out) {
+        for (int d = 0; d < days; d++) {
+            int row = d * columns;
+            double value = 0.0;
+            for (int c = 0; c < columns; c++) {
+                value += prices[row + c] * weights[c];
+            }
+            out[d] = value;
+        }
+    }
+
+    /**
+     * Monte Carlo VaR from normally distributed daily returns, reading the
+     * loss at {@code floor((1 - confidenceLevel) * numSimulations)} in
+     * ascending order via selection rather than a full sort.
+     */
+    public double monteCarloValueAtRisk(
+            Scratch s,
+            double currentValue,
+            double meanReturn,
+            double volatility,
+            double confidenceLevel,
+            int numSimulations
+    ) {
+        double[] losses = s.losses(numSimulations);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < numSimulations; i++) {
+            double simulatedReturn = meanReturn + volatility * random.nextGaussian();
+            double simulatedPortfolioValue = currentValue * (1 + simulatedReturn);
+            losses[i] = currentValue - simulatedPortfolioValue;
+        }
+
+        int varIndex = (int) Math.floor((1 - confidenceLevel) * numSimulations);
+        return select(losses, numSimulations, varIndex);
+    }
+
+    // Quickselect: the k-th smallest of values[0, length).
+    static double select(double[] values, int length, int k) {
+        int left = 0;
+        int right = length - 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (left < right) {
+            double pivot = values[left + random.nextInt(right - left + 1)];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    public static final class Scratch implements ClosingPriceSink {
+        private double[] prices = new double[0];
+        private int[] dayIndex = new int[0];
+        private double[] losses = new double[0];
+        private int days;
+        private int columns;
+        private int span;
+
+        private void reset(List<LocalDate> dates, int columns) {
+            this.days = dates.size();
+            this.columns = columns;
+
+            int cells = days * columns;
+            if (prices.length < cells) {
+                prices = new double[cells];
+            }
+            Arrays.fill(prices, 0, cells, Double.NaN);
+
+            span = days == 0 ? 0 : (int) (dates.get(days - 1).toEpochDay() - dates.get(0).toEpochDay()) + 1;
+            if (dayIndex.length < span) {
+                dayIndex = new int[span];
+            }
+            Arrays.fill(dayIndex, 0, span, -1);
+            long first = days == 0 ? 0 : dates.get(0).toEpochDay();
+            for (int d = 0; d < days; d++) {
+                dayIndex[(int) (dates.get(d).toEpochDay() - first)] = d;
+            }
+        }
+
+        @Override
+        public void accept(int column, int dayOffset, double close) {
+            int d = dayOffset >= 0 && dayOffset < span ? dayIndex[dayOffset] : -1;
+            if (d >= 0 && column >= 0 && column < columns) {
+                prices[d * columns + column] = close;
+            }
+        }
+
+        /**
+         * Fills days a ticker has no close for: with its previous close, or,
+         * before its first close, with that first close. A ticker with no
+         * closes at all is left at zero.
+         */
+        public void fillGaps() {
+            for (int c = 0; c < columns; c++) {
+                int first = -1;
+                for (int d = 0; d < days; d++) {
+                    if (!Double.isNaN(prices[d * columns + c])) {
+                        first = d;
+                        break;
+                    }
+                }
+
+                double last = first >= 0 ? prices[first * columns + c] : 0.0;
+                for (int d = 0; d < days; d++) {
+                    int cell = d * columns + c;
+                    if (Double.isNaN(prices[cell])) {
+                        prices[cell] = last;
+                    } else {
+                        last = prices[cell];
+                    }
+                }
+            }
+        }
+
+        private double[] losses(int size) {
+            if (losses.length < size) {
+                losses = new double[size];
+            }
+            return losses;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package pmr.engine.analysis;
+
+public class AnalysisRejectedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public AnalysisRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
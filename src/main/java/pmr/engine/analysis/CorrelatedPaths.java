@@ -0,0 +1,159 @@
+package pmr.engine.analysis;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo paths of correlated daily returns: each day's returns are
+ * {@code mean + L z}, with L the lower Cholesky factor of the daily
+ * covariance and z independent standard normals. The multi-asset,
+ * multi-day counterpart of {@link AnalysisEngine#monteCarloValueAtRisk}.
+ * Paths are split into fixed-size blocks that run in parallel on the
+ * common fork-join pool, each with its own random stream split off up
+ * front, so a given seed reproduces the same paths however the blocks are
+ * scheduled.
+ */
+public final class CorrelatedPaths {
+    private static final int BLOCK = 1024;
+
+    private CorrelatedPaths() {
+    }
+
+    /**
+     * Lower Cholesky factor of the n x n row-major {@code covariance}, also
+     * row-major. Covariances of assets that are (near) linear combinations
+     * of earlier ones are only positive semidefinite; their pivots are
+     * clamped to zero instead of failing, which simulates them through
+     * the earlier assets alone.
+     */
+    public static double[] cholesky(double[] covariance, int n) {
+        double[] l = new double[n * n];
+        double scale = 0.0;
+        for (int i = 0; i < n; i++) {
+            scale = Math.max(scale, covariance[i * n + i]);
+        }
+        double tolerance = scale * 1e-12;
+
+        for (int j = 0; j < n; j++) {
+            double d = covariance[j * n + j];
+            for (int k = 0; k < j; k++) {
+                d -= l[j * n + k] * l[j * n + k];
+            }
+            double pivot = d > tolerance ? Math.sqrt(d) : 0.0;
+            l[j * n + j] = pivot;
+
+            for (int i = j + 1; i < n; i++) {
+                if (pivot == 0.0) {
+                    l[i * n + j] = 0.0;
+                    continue;
+                }
+                double s = covariance[i * n + j];
+                for (int k = 0; k < j; k++) {
+                    s -= l[i * n + k] * l[j * n + k];
+                }
+                l[i * n + j] = s / pivot;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Simulates {@code paths} paths of {@code horizon} days for a
+     * buy-and-hold portfolio holding fraction {@code exposures[i]} of its
+     * value in asset i. Values are relative to 1.0 today. {@code last[p]}
+     * receives the value of path p at the end of the horizon. Only the
+     * first {@code tracked} paths are kept for every day, day-major: the
+     * value of path p at the close of day d + 1 lands at
+     * {@code daily[d * tracked + p]}. Keeping every day of every path would
+     * take {@code horizon * paths} doubles.
+     * <p>
+     * Paths come in antithetic pairs, the second taking the negated shocks
+     * of the first, which halves both the normal draws and the Cholesky
+     * products and cancels the sampling error of the mean. Within a block
+     * the paths are the innermost loop over contiguous arrays, so the
+     * products vectorize.
+     */
+    public static void simulate(
+            double[] mean,
+            double[] cholesky,
+            double[] exposures,
+            int horizon,
+            int paths,
+            long seed,
+            double[] last,
+            int tracked,
+            double[] daily
+    ) {
+        int n = mean.length;
+        int blocks = (paths + BLOCK - 1) / BLOCK;
+
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+        for (int b = 0; b < blocks; b++) {
+            streams[b] = root.split();
+        }
+
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            SplittableRandom random = streams[b];
+            int first = b * BLOCK;
+            int size = Math.min(BLOCK, paths - first);
+            int pairs = (size + 1) / 2;
+
+            // z[k * pairs + p] is the draw for asset k on pair p; growth
+            // holds the upper then the lower path of each pair.
+            double[] z = new double[n * pairs];
+            double[] shock = new double[pairs];
+            double[] growth = new double[n * 2 * pairs];
+            double[] value = new double[2 * pairs];
+            Arrays.fill(growth, 1.0);
+
+            for (int d = 0; d < horizon; d++) {
+                for (int k = 0; k < n * pairs; k++) {
+                    z[k] = random.nextGaussian();
+                }
+                Arrays.fill(value, 0.0);
+
+                for (int i = 0; i < n; i++) {
+                    Arrays.fill(shock, 0.0);
+                    int row = i * n;
+                    for (int k = 0; k <= i; k++) {
+                        double l = cholesky[row + k];
+                        if (l == 0.0) {
+                            continue;
+                        }
+                        int zk = k * pairs;
+                        for (int p = 0; p < pairs; p++) {
+                            shock[p] += l * z[zk + p];
+                        }
+                    }
+
+                    double up = 1 + mean[i];
+                    double w = exposures[i];
+                    int g = i * 2 * pairs;
+                    for (int p = 0; p < pairs; p++) {
+                        double upper = growth[g + p] * (up + shock[p]);
+                        double lower = growth[g + pairs + p] * (up - shock[p]);
+                        growth[g + p] = upper;
+                        growth[g + pairs + p] = lower;
+                        value[p] += w * upper;
+                        value[pairs + p] += w * lower;
+                    }
+                }
+
+                if (first < tracked) {
+                    copyBlock(value, pairs, Math.min(size, tracked - first), daily, d * tracked + first);
+                }
+            }
+            copyBlock(value, pairs, size, last, first);
+        });
+    }
+
+    // Copies the first count paths of a block, upper paths then lower, to
+    // out[at, at + count). With an odd count the last lower path is dropped.
+    private static void copyBlock(double[] value, int pairs, int count, double[] out, int at) {
+        int upper = Math.min(pairs, count);
+        System.arraycopy(value, 0, out, at, upper);
+        System.arraycopy(value, pairs, out, at + upper, count - upper);
+    }
+}
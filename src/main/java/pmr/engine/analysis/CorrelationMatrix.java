@@ -0,0 +1,137 @@
+package pmr.engine.analysis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pairwise Pearson correlation of return series aligned on a shared day
+ * axis, with NaN marking days a series has no return for. Each pair uses
+ * only the days both series cover. The upper triangle is split into square
+ * blocks that are computed in parallel on the common fork-join pool.
+ */
+public final class CorrelationMatrix {
+    public static final int MIN_OVERLAP = 20;
+    private static final int BLOCK = 32;
+
+    private CorrelationMatrix() {
+    }
+
+    /**
+     * {@code returns[i][t]} is series i's return on day t. The result is
+     * symmetric with ones on the diagonal; pairs sharing fewer than
+     * {@link #MIN_OVERLAP} days, or with a constant series, are NaN.
+     */
+    public static double[][] compute(double[][] returns) {
+        int n = returns.length;
+        double[][] corr = new double[n][n];
+
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        List<int[]> tiles = new ArrayList<>(blocks * (blocks + 1) / 2);
+        for (int bi = 0; bi < blocks; bi++) {
+            for (int bj = bi; bj < blocks; bj++) {
+                tiles.add(new int[] {bi, bj});
+            }
+        }
+
+        tiles.parallelStream().forEach(tile -> {
+            int iEnd = Math.min((tile[0] + 1) * BLOCK, n);
+            int jEnd = Math.min((tile[1] + 1) * BLOCK, n);
+            for (int i = tile[0] * BLOCK; i < iEnd; i++) {
+                for (int j = Math.max(tile[1] * BLOCK, i); j < jEnd; j++) {
+                    double c = i == j ? 1.0 : pearson(returns[i], returns[j]);
+                    corr[i][j] = c;
+                    corr[j][i] = c;
+                }
+            }
+        });
+
+        return corr;
+    }
+
+    private static double pearson(double[] x, double[] y) {
+        int count = 0;
+        double sx = 0.0;
+        double sy = 0.0;
+        double sxx = 0.0;
+        double syy = 0.0;
+        double sxy = 0.0;
+
+        for (int t = 0; t < x.length; t++) {
+            double a = x[t];
+            double b = y[t];
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                continue;
+            }
+            count++;
+            sx += a;
+            sy += b;
+            sxx += a * a;
+            syy += b * b;
+            sxy += a * b;
+        }
+
+        if (count < MIN_OVERLAP) {
+            return Double.NaN;
+        }
+
+        double cov = sxy - sx * sy / count;
+        double varX = sxx - sx * sx / count;
+        double varY = syy - sy * sy / count;
+        if (varX <= 0.0 || varY <= 0.0) {
+            return Double.NaN;
+        }
+        return Math.max(-1.0, Math.min(1.0, cov / Math.sqrt(varX * varY)));
+    }
+
+    /**
+     * Single-linkage groups of series whose correlation is at least
+     * {@code threshold}, as lists of row indexes. Series that match nothing
+     * are left out.
+     */
+    public static List<List<Integer>> clusters(double[][] corr, double threshold) {
+        int n = corr.length;
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (corr[i][j] >= threshold) {
+                    parent[find(parent, i)] = find(parent, j);
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            groups.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(i);
+        }
+        return groups.values().stream().filter(group -> group.size() > 1).toList();
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /** Mean of the defined off-diagonal entries, or NaN if there are none. */
+    public static double averageCorrelation(double[][] corr) {
+        double sum = 0.0;
+        int count = 0;
+        for (int i = 0; i < corr.length; i++) {
+            for (int j = i + 1; j < corr.length; j++) {
+                if (!Double.isNaN(corr[i][j])) {
+                    sum += corr[i][j];
+                    count++;
+                }
+            }
+        }
+        return count > 0 ? sum / count : Double.NaN;
+    }
+}
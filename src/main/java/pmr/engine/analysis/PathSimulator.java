@@ -0,0 +1,197 @@
+package pmr.engine.analysis;
+
+import pmr.engine.diagnostics.AnalysisStageEvent;
+import pmr.engine.model.Asset;
+import pmr.engine.model.PathSimulationResult;
+import pmr.engine.model.Portfolio;
+import pmr.engine.service.Repository;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Horizon P&L of a portfolio from correlated per-ticker return paths.
+ * Mean and covariance of daily returns come from the precomputed
+ * ticker_returns, over the stored trading days on which every holding has
+ * a return (at least SIMULATION_MIN_LOOKBACK_DAYS of them); holdings are converted to
+ * value fractions at the latest closes and held, unrebalanced, through
+ * the horizon. VaR, expected shortfall and the last day's band use every
+ * path; the bands for earlier days use the first {@code BAND_PATHS}, which
+ * keeps memory at {@code paths + horizon * BAND_PATHS} doubles.
+ */
+public class PathSimulator {
+    private static final double[] PERCENTILES = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+    private static final int BAND_PATHS = 16_384;
+    private static final int MIN_LOOKBACK_DAYS = Integer.parseInt(System.getenv().getOrDefault("SIMULATION_MIN_LOOKBACK_DAYS", "60"));
+
+    private final long userId;
+    private final Portfolio portfolio;
+    private final Repository repository;
+
+    public PathSimulator(long userId, Portfolio portfolio, Repository repository) {
+        this.userId = userId;
+        this.portfolio = portfolio;
+        this.repository = repository;
+    }
+
+    public PathSimulationResult simulate(int horizon, int paths, double confidenceLevel, long seed) {
+        List<Asset> assets = portfolio.assets();
+        List<LocalDate> tradingDates = repository.fetchTradingDates();
+
+        Map<String, Integer> columnByTicker = new LinkedHashMap<>();
+        int[] columns = new int[assets.size()];
+        for (int a = 0; a < assets.size(); a++) {
+            columns[a] = columnByTicker.computeIfAbsent(assets.get(a).ticker(), t -> columnByTicker.size());
+        }
+        String[] tickers = columnByTicker.keySet().toArray(new String[0]);
+        int n = tickers.length;
+        double[] weights = new double[n];
+        for (int a = 0; a < assets.size(); a++) {
+            weights[columns[a]] += assets.get(a).weight();
+        }
+
+        AnalysisStageEvent stage = AnalysisStageEvent.begin("prices", userId, assets.size(), n, tradingDates.size());
+        double[] exposures = exposures(tickers, weights, tradingDates);
+        stage.commit();
+
+        stage = AnalysisStageEvent.begin("covariance", userId, assets.size(), n, tradingDates.size());
+        double[][] returns = repository.fetchTickerReturns(tickers, tradingDates);
+        double[] mean = new double[n];
+        double[] covariance = new double[n * n];
+        int lookbackDays = moments(returns, tradingDates.size(), mean, covariance);
+        double[] cholesky = CorrelatedPaths.cholesky(covariance, n);
+        stage.commit();
+
+        stage = AnalysisStageEvent.begin("simulate", userId, assets.size(), n, tradingDates.size());
+        stage.simulations = paths;
+        int tracked = Math.min(paths, BAND_PATHS);
+        double[] last = new double[paths];
+        double[] daily = new double[horizon * tracked];
+        CorrelatedPaths.simulate(mean, cholesky, exposures, horizon, paths, seed, last, tracked, daily);
+        stage.commit();
+
+        double currentValue = portfolio.currentValue();
+        double[] pnl = new double[paths];
+        List<PathSimulationResult.Band> bands = new ArrayList<>(horizon);
+        for (int d = 0; d < horizon - 1; d++) {
+            for (int p = 0; p < tracked; p++) {
+                pnl[p] = currentValue * (daily[d * tracked + p] - 1);
+            }
+            bands.add(new PathSimulationResult.Band(d + 1, band(pnl, tracked)));
+        }
+        for (int p = 0; p < paths; p++) {
+            pnl[p] = currentValue * (last[p] - 1);
+        }
+        bands.add(new PathSimulationResult.Band(horizon, band(pnl, paths)));
+
+        double cutoff = AnalysisEngine.select(pnl, paths, rank(1 - confidenceLevel, paths));
+        double tailSum = 0.0;
+        int tailCount = 0;
+        double sum = 0.0;
+        for (int p = 0; p < paths; p++) {
+            sum += pnl[p];
+            if (pnl[p] <= cutoff) {
+                tailSum += pnl[p];
+                tailCount++;
+            }
+        }
+
+        return new PathSimulationResult(
+                List.of(tickers),
+                horizon,
+                paths,
+                tracked,
+                lookbackDays,
+                confidenceLevel,
+                -cutoff,
+                -tailSum / tailCount,
+                sum / paths,
+                PERCENTILES.clone(),
+                bands
+        );
+    }
+
+    // Fraction of today's value held in each ticker, at its latest close.
+    private double[] exposures(String[] tickers, double[] weights, List<LocalDate> tradingDates) {
+        int n = tickers.length;
+        double[] latest = new double[n];
+        int[] latestDay = new int[n];
+        Arrays.fill(latestDay, -1);
+        repository.fetchClosingPrices(tickers, tradingDates, (column, dayOffset, close) -> {
+            if (dayOffset > latestDay[column]) {
+                latestDay[column] = dayOffset;
+                latest[column] = close;
+            }
+        });
+
+        double[] exposures = new double[n];
+        double total = 0.0;
+        for (int c = 0; c < n; c++) {
+            exposures[c] = weights[c] * latest[c];
+            total += exposures[c];
+        }
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("Portfolio has no priced holdings to simulate");
+        }
+        for (int c = 0; c < n; c++) {
+            exposures[c] /= total;
+        }
+        return exposures;
+    }
+
+    // Sample mean and covariance over the days every ticker has a return.
+    // Filling gaps with zeros would shrink the variance and correlations of
+    // a ticker with a short or patchy history, and so understate the risk;
+    // dropping incomplete days keeps the estimate an honest sample
+    // covariance. Returns the number of days used.
+    private static int moments(double[][] returns, int days, double[] mean, double[] covariance) {
+        int n = mean.length;
+        double[] row = new double[n];
+        int count = 0;
+
+        for (int d = 0; d < days; d++) {
+            boolean complete = true;
+            for (int i = 0; i < n && complete; i++) {
+                row[i] = returns[i][d];
+                complete = !Double.isNaN(row[i]);
+            }
+            if (!complete) {
+                continue;
+            }
+
+            // Welford update of the mean vector and co-moment matrix.
+            count++;
+            for (int i = 0; i < n; i++) {
+                double delta = (row[i] - mean[i]) / count;
+                for (int j = 0; j < n; j++) {
+                    covariance[i * n + j] += (count - 1) * delta * (row[j] - mean[j]);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                mean[i] += (row[i] - mean[i]) / count;
+            }
+        }
+
+        if (count < MIN_LOOKBACK_DAYS) {
+            throw new IllegalArgumentException("Only " + count + " days on which every holding has a return; "
+                    + MIN_LOOKBACK_DAYS + " are needed to simulate");
+        }
+        for (int k = 0; k < n * n; k++) {
+            covariance[k] /= count - 1;
+        }
+        return count;
+    }
+
+    // P&L at each of PERCENTILES among pnl[0, count); reorders pnl.
+    private static double[] band(double[] pnl, int count) {
+        double[] band = new double[PERCENTILES.length];
+        for (int q = 0; q < PERCENTILES.length; q++) {
+            band[q] = AnalysisEngine.select(pnl, count, rank(PERCENTILES[q], count));
+        }
+        return band;
+    }
+
+    private static int rank(double percentile, int paths) {
+        return Math.min(paths - 1, (int) Math.floor(percentile * paths));
+    }
+}
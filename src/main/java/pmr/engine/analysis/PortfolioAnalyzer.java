@@ -1,9 +1,6 @@
 package pmr.engine.analysis;
 
-import org.apache.commons.math3.distribution.NormalDistribution;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
-
+import pmr.engine.diagnostics.AnalysisStageEvent;
 import pmr.engine.service.Repository;
 import pmr.engine.model.Asset;
 import pmr.engine.model.Portfolio;
@@ -12,9 +9,12 @@ import java.time.LocalDate;
 import java.util.*;
 
 public class PortfolioAnalyzer {
+    private static final int NUM_SIMULATIONS = 10000;
+
     private final long userId;
     private final Portfolio portfolio;
     private final Repository repository;
+    private final AnalysisEngine engine;
 
     private final List<LocalDate> tradingDates;
     private final double[] dailyValues;
@@ -27,13 +27,11 @@ public class PortfolioAnalyzer {
 
     private double valueAtRisk;
 
-    private static final int NUM_TRADING_DAYS = 252;
-    private static final double ANNUAL_RISK_FREE_RATE = 0.05;
-
-    public PortfolioAnalyzer(long userId, Portfolio portfolio, Repository repository) {
+    public PortfolioAnalyzer(long userId, Portfolio portfolio, Repository repository, AnalysisEngine engine) {
         this.userId = userId;
         this.portfolio = portfolio;
         this.repository = repository;
+        this.engine = engine;
 
         tradingDates = repository.fetchTradingDates();
         dailyValues = new double[tradingDates.size()];
@@ -41,12 +39,43 @@ public class PortfolioAnalyzer {
     }
 
     public int analyze() {
-        calculateDailyValues();
-        calculateReturns();
-        calculateMetrics();
-        calculateMonteCarloValueAtRisk(0.95, 10000);
+        List<Asset> assets = portfolio.assets();
+
+        // Resolve tickers to dense price-matrix columns once; repeated
+        // tickers share a column and their weights add up.
+        Map<String, Integer> columnByTicker = new LinkedHashMap<>();
+        int[] columns = new int[assets.size()];
+        for (int a = 0; a < assets.size(); a++) {
+            columns[a] = columnByTicker.computeIfAbsent(assets.get(a).ticker(), t -> columnByTicker.size());
+        }
+        String[] tickers = columnByTicker.keySet().toArray(new String[0]);
+        double[] weights = new double[tickers.length];
+        for (int a = 0; a < assets.size(); a++) {
+            weights[columns[a]] += assets.get(a).weight();
+        }
 
-        return repository.savePortfolio(
+        int numTickers = tickers.length;
+        AnalysisStageEvent stage = stage("prices", assets.size(), numTickers);
+        AnalysisEngine.Scratch scratch = engine.scratch(tradingDates, numTickers);
+        repository.fetchClosingPrices(tickers, tradingDates, scratch);
+        scratch.fillGaps();
+        stage.commit();
+
+        stage = stage("revalue", assets.size(), numTickers);
+        AnalysisEngine.Metrics metrics = engine.run(scratch, weights, dailyValues, dailyReturns);
+        cumulativeReturn = metrics.cumulativeReturn();
+        meanReturn = metrics.meanReturn();
+        volatility = metrics.volatility();
+        sharpe = metrics.sharpe();
+        stage.commit();
+
+        stage = stage("valueAtRisk", assets.size(), numTickers);
+        stage.simulations = NUM_SIMULATIONS;
+        valueAtRisk = engine.monteCarloValueAtRisk(scratch, portfolio.currentValue(), meanReturn, volatility, 0.95, NUM_SIMULATIONS);
+        stage.commit();
+
+        stage = stage("save", assets.size(), numTickers);
+        int id = repository.savePortfolio(
                 portfolio.name(),
                 userId,
                 tradingDates,
@@ -59,72 +88,12 @@ public class PortfolioAnalyzer {
                 valueAtRisk,
                 portfolio.assets()
         );
-    }
-
-    private void calculateDailyValues() {
-        List<Asset> assets = portfolio.assets();
-        List<String> tickers = assets.stream().map(Asset::ticker).toList();
-        Map<LocalDate, Map<String, Double>> priceData = repository.fetchClosingPrices(tickers, tradingDates);
-
-        for (int i = 0; i < tradingDates.size(); i++) {
-            LocalDate date = tradingDates.get(i);
-            Map<String, Double> pricesOnDate = priceData.getOrDefault(date, Collections.emptyMap());
-
-            double weightedSum = 0.0;
-            for (Asset asset : assets) {
-                Double price = pricesOnDate.get(asset.ticker());
-                if (price != null) {
-                    weightedSum += price * asset.weight();
-                }
-            }
-
-            dailyValues[i] = weightedSum;
-        }
-    }
-
-    private void calculateReturns() {
-        for (int i = 1; i < tradingDates.size(); i++) {
-            double previousValue = dailyValues[i - 1];
-            double currentValue = dailyValues[i];
+        stage.commit();
 
-            double dailyReturn = (currentValue - previousValue) / previousValue;
-            dailyReturns[i - 1] = dailyReturn;
-        }
+        return id;
     }
 
-    private void calculateMetrics() {
-        double cumulativeProduct = 1.0;
-
-        for (double dailyReturn : dailyReturns) {
-            cumulativeProduct *= (1 + dailyReturn);
-        }
-
-        cumulativeReturn = cumulativeProduct - 1;
-
-        StandardDeviation stdDev = new StandardDeviation();
-        Mean mean = new Mean();
-
-        meanReturn = mean.evaluate(dailyReturns);
-        volatility = stdDev.evaluate(dailyReturns);
-
-        double dailyRiskFreeRate = Math.pow(1 + ANNUAL_RISK_FREE_RATE, 1.0 / NUM_TRADING_DAYS) - 1;
-        sharpe = (meanReturn - dailyRiskFreeRate) / volatility * Math.pow(NUM_TRADING_DAYS, 0.5);
-    }
-
-    private void calculateMonteCarloValueAtRisk(double confidenceLevel, int numSimulations) {
-        NormalDistribution distribution = new NormalDistribution(meanReturn, volatility);
-        double[] simulatedLosses = new double[numSimulations];
-
-        for (int i = 0; i < numSimulations; i++) {
-            double simulatedReturn = distribution.sample();
-            double simulatedPortfolioValue = portfolio.currentValue() * (1 + simulatedReturn);
-            double loss = portfolio.currentValue() - simulatedPortfolioValue;
-            simulatedLosses[i] = loss;
-        }
-
-        Arrays.sort(simulatedLosses);
-        int varIndex = (int) Math.floor((1 - confidenceLevel) * numSimulations);
-
-        valueAtRisk = simulatedLosses[varIndex];
+    private AnalysisStageEvent stage(String name, int numAssets, int numTickers) {
+        return AnalysisStageEvent.begin(name, userId, numAssets, numTickers, tradingDates.size());
     }
 }
@@ -0,0 +1,131 @@
+package pmr.engine.api;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import pmr.engine.analysis.AnalysisAdmissionController;
+import pmr.engine.diagnostics.FlightRecordings;
+import pmr.engine.model.AnalysisLimits;
+
+import java.io.IOException;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+    private final AnalysisAdmissionController admissionController;
+    private final FlightRecordings flightRecordings;
+
+    public AdminController(AnalysisAdmissionController admissionController, FlightRecordings flightRecordings) {
+        this.admissionController = admissionController;
+        this.flightRecordings = flightRecordings;
+    }
+
+    @GetMapping("/analysis/limits")
+    public ResponseEntity<?> fetchAnalysisLimits(@RequestHeader("Authorization") String authHeader) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        return ResponseEntity.ok(admissionController.getLimits());
+    }
+
+    @PostMapping("/analysis/limits")
+    public ResponseEntity<?> updateAnalysisLimits(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestBody AnalysisLimits limits
+    ) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        try {
+            admissionController.setLimits(limits);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage()));
+        }
+
+        return ResponseEntity.ok(admissionController.getLimits());
+    }
+
+    @GetMapping("/jfr")
+    public ResponseEntity<?> fetchRecording(@RequestHeader("Authorization") String authHeader) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        return flightRecordings.status()
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> notFound("No recording"));
+    }
+
+    @PostMapping("/jfr/start")
+    public ResponseEntity<?> startRecording(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(defaultValue = "profile") String mode,
+            @RequestParam(defaultValue = "300") long durationSeconds
+    ) throws IOException {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        try {
+            return ResponseEntity.ok(flightRecordings.start(mode, durationSeconds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/jfr/stop")
+    public ResponseEntity<?> stopRecording(@RequestHeader("Authorization") String authHeader) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        return flightRecordings.stop()
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> notFound("No recording"));
+    }
+
+    @GetMapping("/jfr/download")
+    public ResponseEntity<?> downloadRecording(@RequestHeader("Authorization") String authHeader) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        if (flightRecordings.status().isEmpty()) {
+            return notFound("No recording");
+        }
+
+        StreamingResponseBody body = out -> flightRecordings.writeTo(out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"pmr.jfr\"")
+                .body(body);
+    }
+
+    private static boolean isAuthorized(String authHeader) {
+        String adminKey = System.getenv("ADMIN_API_KEY");
+        return adminKey != null && !adminKey.isBlank() && authHeader.equals("Bearer " + adminKey);
+    }
+
+    private static ResponseEntity<?> unauthorized() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "Unauthorized"));
+    }
+
+    private static ResponseEntity<?> notFound(String message) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", message));
+    }
+}
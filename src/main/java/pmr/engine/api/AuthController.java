@@ -1,59 +1,66 @@
 package pmr.engine.api;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import pmr.engine.model.AuthRequest;
 import pmr.engine.model.AuthResponse;
+import pmr.engine.model.CustomUserDetails;
 import pmr.engine.model.SignupRequest;
 import pmr.engine.model.User;
 import pmr.engine.security.JwtUtil;
 import pmr.engine.repository.UserRepository;
+import pmr.engine.service.PasswordVerifier;
 import pmr.engine.service.UserDetailsServiceImpl;
 
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/auth")
 public class AuthController {
-    private AuthenticationManager authManager;
     private UserRepository userRepository;
     private UserDetailsServiceImpl userDetailsService;
+    private PasswordVerifier passwordVerifier;
     private JwtUtil jwtUtil;
-    private PasswordEncoder passwordEncoder;
 
-    public AuthController(AuthenticationManager authManager, UserRepository userRepository, UserDetailsServiceImpl userDetailsService, JwtUtil jwtUtil, PasswordEncoder passwordEncoder) {
-        this.authManager = authManager;
+    public AuthController(UserRepository userRepository, UserDetailsServiceImpl userDetailsService, PasswordVerifier passwordVerifier, JwtUtil jwtUtil) {
         this.userRepository = userRepository;
         this.userDetailsService = userDetailsService;
+        this.passwordVerifier = passwordVerifier;
         this.jwtUtil = jwtUtil;
-        this.passwordEncoder = passwordEncoder;
     }
 
     @PostMapping("/signin")
     public ResponseEntity<?> signIn(@RequestBody AuthRequest request) {
+        Optional<CustomUserDetails> userDetails;
+        boolean matches;
+
         try {
-            authManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword())
-            );
-        } catch (BadCredentialsException e) {
+            userDetails = userDetailsService.findUser(request.getUsername());
+            String encodedPassword = userDetails.map(CustomUserDetails::getPassword).orElse(null);
+            matches = passwordVerifier.matches(request.getPassword(), encodedPassword);
+        } catch (RejectedExecutionException e) {
             return ResponseEntity
-                    .status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Invalid username or password"));
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("message", "Too many sign-in attempts, please retry"));
         } catch (Exception e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("message", "An unexpected error occurred"));
         }
 
-        UserDetails userDetails = userDetailsService.loadUserByUsername(request.getUsername());
-        String token = jwtUtil.generateToken(userDetails);
+        if (!matches) {
+            return ResponseEntity
+                    .status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("message", "Invalid username or password"));
+        }
+
+        String token = jwtUtil.generateToken(userDetails.get());
 
         return ResponseEntity.ok(new AuthResponse(token));
     }
@@ -68,7 +75,14 @@ public class AuthController {
 
         User newUser = new User();
         newUser.setUsername(request.getUsername());
-        newUser.setPassword(passwordEncoder.encode(request.getPassword()));
+        try {
+            newUser.setPassword(passwordVerifier.encode(request.getPassword()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("message", "Too many sign-up attempts, please retry"));
+        }
         newUser.setRole(request.getRole() != null ? request.getRole() : "USER");
 
         userRepository.save(newUser);
@@ -1,19 +1,56 @@
 package pmr.engine.api;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import pmr.engine.analysis.AnalysisAdmissionController;
+import pmr.engine.analysis.AnalysisEngine;
+import pmr.engine.analysis.AnalysisRejectedException;
+import pmr.engine.analysis.PathSimulator;
 import pmr.engine.analysis.PortfolioAnalyzer;
+import pmr.engine.service.ChartDownsampler;
+import pmr.engine.service.CorrelationReports;
 import pmr.engine.service.Repository;
+import pmr.engine.service.TickerUniverse;
 import pmr.engine.model.*;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
 @RestController
 public class MainController {
+    private static final int SIMULATION_MAX_HORIZON = Integer.parseInt(System.getenv().getOrDefault("SIMULATION_MAX_HORIZON", "63"));
+    private static final int SIMULATION_MAX_PATHS = Integer.parseInt(System.getenv().getOrDefault("SIMULATION_MAX_PATHS", "200000"));
+    private static final int MAX_SEARCH_TICKERS = 20;
+    private static final int MAX_STATS_TICKERS = 100;
+
     private final Repository repository;
+    private final TickerUniverse tickerUniverse;
+    private final AnalysisAdmissionController admissionController;
+    private final AnalysisEngine analysisEngine;
+    private final ChartDownsampler chartDownsampler;
+    private final CorrelationReports correlationReports;
 
-    public MainController(Repository repository) {
+    public MainController(
+            Repository repository,
+            TickerUniverse tickerUniverse,
+            AnalysisAdmissionController admissionController,
+            AnalysisEngine analysisEngine,
+            ChartDownsampler chartDownsampler,
+            CorrelationReports correlationReports
+    ) {
         this.repository = repository;
+        this.tickerUniverse = tickerUniverse;
+        this.admissionController = admissionController;
+        this.analysisEngine = analysisEngine;
+        this.chartDownsampler = chartDownsampler;
+        this.correlationReports = correlationReports;
     }
 
     @GetMapping("/health")
@@ -22,27 +59,114 @@ public class MainController {
     }
 
     @PostMapping("/analyze")
-    public int analyze(@RequestBody Portfolio portfolio) {
+    public ResponseEntity<?> analyze(@RequestBody Portfolio request) {
+        Portfolio portfolio = normalizeTickers(request);
+        ResponseEntity<?> invalid = checkTickers(portfolio);
+        if (invalid != null) {
+            return invalid;
+        }
+
         long userId = getAuthenticatedUserId();
-        PortfolioAnalyzer analyzer = new PortfolioAnalyzer(userId, portfolio, repository);
-        int id = analyzer.analyze();
-        return id;
+        try (AnalysisAdmissionController.Permit permit = admissionController.acquire(userId)) {
+            PortfolioAnalyzer analyzer = new PortfolioAnalyzer(userId, portfolio, repository, analysisEngine);
+            int id = analyzer.analyze();
+            return ResponseEntity.ok(id);
+        } catch (AnalysisRejectedException e) {
+            return ResponseEntity
+                    .status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/simulate")
+    public ResponseEntity<?> simulate(
+            @RequestBody Portfolio request,
+            @RequestParam(defaultValue = "10") int horizon,
+            @RequestParam(defaultValue = "10000") int paths,
+            @RequestParam(defaultValue = "0.95") double confidence,
+            @RequestParam(required = false) Long seed
+    ) {
+        if (horizon < 1 || horizon > SIMULATION_MAX_HORIZON) {
+            throw new IllegalArgumentException("horizon must be between 1 and " + SIMULATION_MAX_HORIZON);
+        }
+        if (paths < 100 || paths > SIMULATION_MAX_PATHS) {
+            throw new IllegalArgumentException("paths must be between 100 and " + SIMULATION_MAX_PATHS);
+        }
+        if (!(confidence > 0.5 && confidence < 1)) {
+            throw new IllegalArgumentException("confidence must be between 0.5 and 1");
+        }
+        Portfolio portfolio = normalizeTickers(request);
+        ResponseEntity<?> invalid = checkTickers(portfolio);
+        if (invalid != null) {
+            return invalid;
+        }
+
+        long userId = getAuthenticatedUserId();
+        try (AnalysisAdmissionController.Permit permit = admissionController.acquire(userId)) {
+            PathSimulator simulator = new PathSimulator(userId, portfolio, repository);
+            long pathSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+            return ResponseEntity.ok(simulator.simulate(horizon, paths, confidence, pathSeed));
+        } catch (AnalysisRejectedException e) {
+            return ResponseEntity
+                    .status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Tickers are stored upper-case and matched exactly from here on, by
+    // the universe check and by every price lookup.
+    private static Portfolio normalizeTickers(Portfolio portfolio) {
+        List<Asset> assets = portfolio.assets().stream()
+                .map(asset -> asset.ticker() == null
+                        ? asset
+                        : new Asset(asset.ticker().trim().toUpperCase(Locale.ROOT), asset.weight()))
+                .toList();
+        return new Portfolio(portfolio.name(), portfolio.currentValue(), assets);
+    }
+
+    private ResponseEntity<?> checkTickers(Portfolio portfolio) {
+        List<String> unknown = portfolio.assets().stream()
+                .map(Asset::ticker)
+                .filter(ticker -> !tickerUniverse.contains(ticker))
+                .toList();
+
+        if (!unknown.isEmpty()) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Unknown tickers: " + String.join(", ", unknown)));
+        }
+        return null;
     }
 
     @PostMapping("/fetchPortfolio")
-    public PortfolioAnalysisResult fetchPortfolio(@RequestBody int id) {
+    public PortfolioAnalysisResult fetchPortfolio(
+            @RequestBody int id,
+            @RequestParam(required = false) Integer maxPoints
+    ) {
+        if (maxPoints != null) {
+            return chartDownsampler.fetchPortfolio(id, maxPoints);
+        }
         return repository.fetchPortfolio(id);
     }
 
     @GetMapping("/tickers")
-    public String[] fetchTickers() {
-        return repository.fetchTickers();
+    public Page<TickerInfo> fetchTickers(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return tickerUniverse.search(prefix, cursor, limit);
     }
 
     @GetMapping("/userPortfolios")
-    public PortfolioSummary[] fetchUserPortfolios() {
+    public Page<PortfolioSummary> fetchUserPortfolios(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
         long userId = getAuthenticatedUserId();
-        return repository.fetchUserPortfolios(userId);
+        return repository.fetchUserPortfolios(userId, cursor, limit);
     }
 
     @GetMapping("/accountData")
@@ -52,8 +176,64 @@ public class MainController {
     }
 
     @GetMapping("/leaderboard")
-    public PortfolioLeaderboardEntry[] fetchLeaderboard() {
-        return repository.fetchLeaderboardEntries();
+    public Page<PortfolioLeaderboardEntry> fetchLeaderboard(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return repository.fetchLeaderboardEntries(cursor, limit);
+    }
+
+    @GetMapping("/leaderboard/search")
+    public Page<PortfolioLeaderboardEntry> searchLeaderboard(
+            @RequestParam List<String> tickers,
+            @RequestParam(defaultValue = "all") String match,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        String[] normalized = normalizeTickers(tickers, MAX_SEARCH_TICKERS);
+        return switch (match) {
+            case "all" -> repository.searchByHoldings(normalized, true, cursor, limit);
+            case "any" -> repository.searchByHoldings(normalized, false, cursor, limit);
+            default -> throw new IllegalArgumentException("match must be all or any");
+        };
+    }
+
+    @GetMapping("/correlations")
+    public CorrelationReport fetchCorrelations(
+            @RequestParam(defaultValue = "user") String scope,
+            @RequestParam(defaultValue = "50") int top
+    ) {
+        return switch (scope) {
+            case "user" -> correlationReports.forUser(getAuthenticatedUserId());
+            case "leaderboard" -> correlationReports.forLeaderboard(top);
+            default -> throw new IllegalArgumentException("scope must be user or leaderboard");
+        };
+    }
+
+    @GetMapping("/tickerStats")
+    public List<TickerStats> fetchTickerStats(@RequestParam List<String> tickers) {
+        return repository.fetchTickerStats(normalizeTickers(tickers, MAX_STATS_TICKERS));
+    }
+
+    // Blank entries are dropped before the count check, so a request of
+    // only blanks is rejected rather than matching everything or nothing.
+    private static String[] normalizeTickers(List<String> tickers, int max) {
+        String[] normalized = tickers.stream()
+                .map(ticker -> ticker.trim().toUpperCase(Locale.ROOT))
+                .filter(ticker -> !ticker.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+        if (normalized.length == 0 || normalized.length > max) {
+            throw new IllegalArgumentException("tickers must list between 1 and " + max + " tickers");
+        }
+        return normalized;
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("message", e.getMessage()));
     }
 
     private long getAuthenticatedUserId() {
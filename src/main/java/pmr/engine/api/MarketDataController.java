@@ -2,28 +2,67 @@ package pmr.engine.api;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestHeader;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
-import pmr.engine.service.MarketDataFetcher;
+import org.springframework.web.bind.annotation.*;
+import pmr.engine.service.IngestionScheduler;
+
+import java.net.URI;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/market")
 public class MarketDataController {
-    private final MarketDataFetcher marketDataFetcher;
+    private final IngestionScheduler ingestionScheduler;
 
-    public MarketDataController(MarketDataFetcher marketDataFetcher) {
-        this.marketDataFetcher = marketDataFetcher;
+    public MarketDataController(IngestionScheduler ingestionScheduler) {
+        this.ingestionScheduler = ingestionScheduler;
     }
 
     @PostMapping("/update")
-    public ResponseEntity<String> updateMarketData(@RequestHeader("Authorization") String authHeader) {
-        if (!authHeader.equals("Bearer " + System.getenv("POLYGON_API_KEY"))) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+    public ResponseEntity<?> updateMarketData(@RequestHeader("Authorization") String authHeader) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
         }
 
-        marketDataFetcher.fetchMarketData();
-        return ResponseEntity.ok("Market data update triggered");
+        return ingestionScheduler.trigger("api")
+                .<ResponseEntity<?>>map(run -> ResponseEntity
+                        .accepted()
+                        .location(URI.create("/market/runs/" + run.id()))
+                        .body(ingestionScheduler.find(run.id()).orElse(null)))
+                .orElseGet(() -> ResponseEntity
+                        .status(HttpStatus.CONFLICT)
+                        .body(Map.of("message", "Market data update already running")));
+    }
+
+    @GetMapping("/runs")
+    public ResponseEntity<?> fetchRuns(@RequestHeader("Authorization") String authHeader) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        return ResponseEntity.ok(ingestionScheduler.recent());
+    }
+
+    @GetMapping("/runs/{runId}")
+    public ResponseEntity<?> fetchRun(
+            @RequestHeader("Authorization") String authHeader,
+            @PathVariable String runId
+    ) {
+        if (!isAuthorized(authHeader)) {
+            return unauthorized();
+        }
+
+        return ingestionScheduler.find(runId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity
+                        .status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("message", "Unknown run " + runId)));
+    }
+
+    private static boolean isAuthorized(String authHeader) {
+        return authHeader.equals("Bearer " + System.getenv("POLYGON_API_KEY"));
+    }
+
+    private static ResponseEntity<?> unauthorized() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "Unauthorized"));
     }
 }
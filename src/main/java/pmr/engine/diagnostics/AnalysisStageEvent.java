@@ -0,0 +1,42 @@
+package pmr.engine.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pmr.AnalysisStage")
+@Label("Analysis Stage")
+@Category({"PMR", "Analysis"})
+@Description("One stage of a portfolio analysis: prices, revalue, valueAtRisk or save")
+public class AnalysisStageEvent extends Event {
+    @Label("Stage")
+    public String stage;
+
+    @Label("User Id")
+    public long userId;
+
+    @Label("Assets")
+    public int assets;
+
+    @Label("Tickers")
+    public int tickers;
+
+    @Label("Trading Days")
+    public int tradingDays;
+
+    @Label("Simulations")
+    public int simulations;
+
+    public static AnalysisStageEvent begin(String stage, long userId, int assets, int tickers, int tradingDays) {
+        AnalysisStageEvent event = new AnalysisStageEvent();
+        event.stage = stage;
+        event.userId = userId;
+        event.assets = assets;
+        event.tickers = tickers;
+        event.tradingDays = tradingDays;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,151 @@
+package pmr.engine.diagnostics;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.stereotype.Service;
+import pmr.engine.model.FlightRecordingStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * At most one in-process JFR recording at a time, bounded in duration
+ * (JFR_MAX_DURATION_S) and size (JFR_MAX_SIZE_MB). Modes:
+ * "default" uses JDK's low-overhead settings, "profile" its profiling
+ * settings, and "allocation" raises the throttled allocation sample to
+ * 1000/s with stack traces on top of "profile". The per-TLAB allocation
+ * events fire on every TLAB refill and are kept off. The PMR events are on
+ * in every mode.
+ */
+@Service
+public class FlightRecordings {
+    private static final long MAX_DURATION_SECONDS = Long.parseLong(System.getenv().getOrDefault("JFR_MAX_DURATION_S", "1800"));
+    private static final long MAX_SIZE_BYTES = Long.parseLong(System.getenv().getOrDefault("JFR_MAX_SIZE_MB", "200")) * 1024 * 1024;
+
+    private Recording recording;
+    private String mode;
+    private Path file;
+
+    public synchronized FlightRecordingStatus start(String mode, long durationSeconds) throws IOException {
+        if (durationSeconds < 1 || durationSeconds > MAX_DURATION_SECONDS) {
+            throw new IllegalArgumentException("durationSeconds must be between 1 and " + MAX_DURATION_SECONDS);
+        }
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("A recording is already running");
+        }
+
+        Configuration configuration;
+        try {
+            configuration = switch (mode) {
+                case "default" -> Configuration.getConfiguration("default");
+                case "profile", "allocation" -> Configuration.getConfiguration("profile");
+                default -> throw new IllegalArgumentException("mode must be default, profile or allocation");
+            };
+        } catch (ParseException e) {
+            throw new IOException("Unreadable JFR configuration", e);
+        }
+
+        discard();
+
+        Recording next = new Recording(configuration);
+        next.setName("pmr-" + mode);
+        next.enable(AnalysisStageEvent.class);
+        next.enable(RepositoryQueryEvent.class);
+        next.enable(IngestionTickerEvent.class);
+        if (mode.equals("allocation")) {
+            next.enable("jdk.ObjectAllocationSample").withStackTrace().with("throttle", "1000/s");
+            next.disable("jdk.ObjectAllocationInNewTLAB");
+            next.disable("jdk.ObjectAllocationOutsideTLAB");
+        }
+        next.setToDisk(true);
+        next.setMaxSize(MAX_SIZE_BYTES);
+        next.setDuration(Duration.ofSeconds(durationSeconds));
+
+        Path destination = Files.createTempFile("pmr-", ".jfr");
+        next.setDestination(destination);
+        next.start();
+
+        this.recording = next;
+        this.mode = mode;
+        this.file = destination;
+        return status(next);
+    }
+
+    public synchronized Optional<FlightRecordingStatus> stop() {
+        if (recording == null) {
+            return Optional.empty();
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        return Optional.of(status(recording));
+    }
+
+    public synchronized Optional<FlightRecordingStatus> status() {
+        return Optional.ofNullable(recording).map(this::status);
+    }
+
+    /**
+     * Writes the recording as a .jfr file: the finished file once stopped,
+     * or a dump of what has been recorded so far while still running.
+     * Returns false if there is nothing to write.
+     */
+    public synchronized boolean writeTo(OutputStream out) throws IOException {
+        if (recording == null) {
+            return false;
+        }
+
+        if (recording.getState() == RecordingState.RUNNING) {
+            Path dump = Files.createTempFile("pmr-dump-", ".jfr");
+            try {
+                recording.dump(dump);
+                Files.copy(dump, out);
+            } finally {
+                Files.deleteIfExists(dump);
+            }
+            return true;
+        }
+
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        Files.copy(file, out);
+        return true;
+    }
+
+    private FlightRecordingStatus status(Recording r) {
+        return new FlightRecordingStatus(
+                r.getId(),
+                mode,
+                r.getState().name(),
+                r.getStartTime(),
+                r.getStopTime(),
+                r.getDuration() == null ? 0 : r.getDuration().toSeconds(),
+                r.getMaxSize(),
+                r.getSize()
+        );
+    }
+
+    private void discard() throws IOException {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        if (file != null) {
+            Files.deleteIfExists(file);
+            file = null;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        discard();
+    }
+}
@@ -0,0 +1,31 @@
+package pmr.engine.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pmr.IngestionTicker")
+@Label("Ingestion Ticker")
+@Category({"PMR", "Ingestion"})
+@Description("Backfill of one ticker during a market data run")
+public class IngestionTickerEvent extends Event {
+    @Label("Ticker")
+    public String ticker;
+
+    @Label("Run Date")
+    public String runDate;
+
+    @Label("From")
+    public String from;
+
+    @Label("Bars Fetched")
+    public int barsFetched;
+
+    @Label("Rows Inserted")
+    public int rowsInserted;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
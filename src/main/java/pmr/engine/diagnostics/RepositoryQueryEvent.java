@@ -0,0 +1,31 @@
+package pmr.engine.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pmr.RepositoryQuery")
+@Label("Repository Query")
+@Category({"PMR", "Database"})
+@Description("One Repository operation, from getting a connection to reading the last row")
+public class RepositoryQueryEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Rows")
+    public int rows;
+
+    public static RepositoryQueryEvent begin(String operation) {
+        RepositoryQueryEvent event = new RepositoryQueryEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    public void finish(int rows) {
+        this.rows = rows;
+        commit();
+    }
+}
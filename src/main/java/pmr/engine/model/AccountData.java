@@ -1,7 +1,15 @@
 package pmr.engine.model;
 
+import java.time.Instant;
+
 public record AccountData(
         int numPortfolios,
-        double bestSharpe
+        double bestSharpe,
+        double averageSharpe,
+        double bestValueAtRisk,
+        Instant lastAnalysisAt,
+        Integer leaderboardRank,
+        Double bestSharpePercentile,
+        Double bestValueAtRiskPercentile
 ) {
 }
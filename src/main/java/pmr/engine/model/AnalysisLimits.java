@@ -0,0 +1,10 @@
+package pmr.engine.model;
+
+public record AnalysisLimits(
+        int maxConcurrent,
+        int maxPerUser,
+        int queueCapacity,
+        long maxWaitMillis
+) {
+
+}
@@ -0,0 +1,21 @@
+package pmr.engine.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Pairwise correlation of daily returns. Row and column i of
+ * {@code correlations} belong to {@code portfolioIds[i]}; an entry is null
+ * when the two portfolios share too few days to compare.
+ */
+public record CorrelationReport(
+        List<Integer> portfolioIds,
+        List<String> names,
+        LocalDate firstDate,
+        LocalDate lastDate,
+        Double[][] correlations,
+        Double averageCorrelation,
+        double clusterThreshold,
+        List<List<Integer>> clusters
+) {
+}
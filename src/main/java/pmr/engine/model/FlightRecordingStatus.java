@@ -0,0 +1,15 @@
+package pmr.engine.model;
+
+import java.time.Instant;
+
+public record FlightRecordingStatus(
+        long id,
+        String mode,
+        String state,
+        Instant startTime,
+        Instant stopTime,
+        long maxDurationSeconds,
+        long maxSizeBytes,
+        long sizeBytes
+) {
+}
@@ -0,0 +1,28 @@
+package pmr.engine.model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+public record IngestionRunStatus(
+        String runId,
+        LocalDate runDate,
+        String trigger,
+        String state,
+        String message,
+        Instant startedAt,
+        Instant finishedAt,
+        Long durationMillis,
+        int totalTickers,
+        int succeededTickers,
+        int failedTickers,
+        List<TickerOutcome> tickers
+) {
+    public record TickerOutcome(
+            String ticker,
+            String status,
+            Instant startedAt,
+            Long durationMillis
+    ) {
+    }
+}
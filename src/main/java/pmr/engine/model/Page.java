@@ -0,0 +1,10 @@
+package pmr.engine.model;
+
+import java.util.List;
+
+public record Page<T>(
+        List<T> items,
+        String nextCursor
+) {
+
+}
@@ -0,0 +1,28 @@
+package pmr.engine.model;
+
+import java.util.List;
+
+/**
+ * Distribution of a portfolio's P&L over a simulated horizon, in the same
+ * currency as its current value. {@code valueAtRisk} and
+ * {@code expectedShortfall} are losses (positive when money is lost) at
+ * {@code confidenceLevel}; each band holds the P&L at {@code percentiles}
+ * on one day of the horizon. The last day's band is taken over all
+ * {@code paths}, earlier ones over the first {@code bandPaths}.
+ */
+public record PathSimulationResult(
+        List<String> tickers,
+        int horizonDays,
+        int paths,
+        int bandPaths,
+        int lookbackDays,
+        double confidenceLevel,
+        double valueAtRisk,
+        double expectedShortfall,
+        double meanPnl,
+        double[] percentiles,
+        List<Band> bands
+) {
+    public record Band(int day, double[] pnl) {
+    }
+}
@@ -5,11 +5,14 @@ import java.time.LocalDate;
 public record PortfolioSummary(
         String name,
         int id,
-        Asset[] assets,
+        String assetSummary,
+        int numAssets,
         LocalDate start,
         LocalDate end,
         double sharpe,
-        double valueAtRisk
+        double valueAtRisk,
+        Double sharpePercentile,
+        Double valueAtRiskPercentile
 ) {
 
 }
@@ -0,0 +1,10 @@
+package pmr.engine.model;
+
+import java.util.Map;
+
+public record TickerInfo(
+        String ticker,
+        Map<String, Object> metadata
+) {
+
+}
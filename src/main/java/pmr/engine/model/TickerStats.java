@@ -0,0 +1,19 @@
+package pmr.engine.model;
+
+import java.time.LocalDate;
+
+/**
+ * Summary of the daily returns stored for one ticker, maintained by
+ * ingestion. Statistics are daily and null when there are too few returns.
+ */
+public record TickerStats(
+        String ticker,
+        int numReturns,
+        LocalDate firstDate,
+        LocalDate lastDate,
+        Double meanReturn,
+        Double volatility,
+        Double meanLogReturn,
+        Double latestVolatility20d
+) {
+}
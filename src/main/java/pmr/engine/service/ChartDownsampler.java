@@ -0,0 +1,193 @@
+package pmr.engine.service;
+
+import org.springframework.stereotype.Service;
+import pmr.engine.model.PortfolioAnalysisResult;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves portfolios with their time series reduced to at most maxPoints
+ * days for charting. Days are picked by Largest-Triangle-Three-Buckets on
+ * daily values, plus the days holding the lowest and highest value and
+ * return, so peaks and troughs survive. All three series keep the same
+ * days, and returns are recomputed between the kept days:
+ * {@code dailyReturns[k]} is the return from {@code tradingDates[k]} to
+ * {@code tradingDates[k + 1]}, so compounding the sampled returns still
+ * gives the sampled values. Saved portfolios never change, so results
+ * are cached per (portfolio, maxPoints) in a bounded LRU map.
+ */
+@Service
+public class ChartDownsampler {
+    public static final int MIN_POINTS = 8;
+    private static final int EXTREMES = 4;
+    private static final int CACHE_MAX_ENTRIES = Integer.parseInt(System.getenv().getOrDefault("CHART_CACHE_MAX", "1000"));
+
+    private final Repository repository;
+    private final Map<Key, PortfolioAnalysisResult> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, PortfolioAnalysisResult> eldest) {
+            return size() > CACHE_MAX_ENTRIES;
+        }
+    };
+
+    private record Key(int id, int maxPoints) {
+    }
+
+    public ChartDownsampler(Repository repository) {
+        this.repository = repository;
+    }
+
+    public PortfolioAnalysisResult fetchPortfolio(int id, int maxPoints) {
+        if (maxPoints < MIN_POINTS) {
+            throw new IllegalArgumentException("maxPoints must be at least " + MIN_POINTS);
+        }
+
+        Key key = new Key(id, maxPoints);
+        synchronized (cache) {
+            PortfolioAnalysisResult cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        PortfolioAnalysisResult full = repository.fetchPortfolio(id);
+        if (full.dailyValues().length <= maxPoints) {
+            return full;
+        }
+
+        PortfolioAnalysisResult downsampled = downsample(full, maxPoints);
+        synchronized (cache) {
+            cache.put(key, downsampled);
+        }
+        return downsampled;
+    }
+
+    private static PortfolioAnalysisResult downsample(PortfolioAnalysisResult full, int maxPoints) {
+        double[] values = full.dailyValues();
+        double[] returns = full.dailyReturns();
+        int n = values.length;
+
+        boolean[] keep = new boolean[n];
+        for (int index : lttb(values, maxPoints - EXTREMES)) {
+            keep[index] = true;
+        }
+        keep[argMin(values)] = true;
+        keep[argMax(values)] = true;
+        if (returns.length > 0) {
+            keep[argMin(returns) + 1] = true;
+            keep[argMax(returns) + 1] = true;
+        }
+
+        List<LocalDate> dates = new ArrayList<>(maxPoints);
+        double[] sampledValues = new double[maxPoints];
+        int count = 0;
+        for (int d = 0; d < n; d++) {
+            if (keep[d]) {
+                dates.add(full.tradingDates().get(d));
+                sampledValues[count++] = values[d];
+            }
+        }
+
+        double[] sampledReturns = new double[count - 1];
+        for (int k = 0; k < count - 1; k++) {
+            sampledReturns[k] = sampledValues[k + 1] / sampledValues[k] - 1;
+        }
+
+        return new PortfolioAnalysisResult(
+                full.name(),
+                full.userId(),
+                full.username(),
+                dates,
+                Arrays.copyOf(sampledValues, count),
+                sampledReturns,
+                full.cumulativeReturn(),
+                full.meanReturn(),
+                full.volatility(),
+                full.sharpe(),
+                full.valueAtRisk(),
+                full.assets()
+        );
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets over (index, y): keeps the first and
+     * last points and, from each of {@code threshold - 2} equal buckets in
+     * between, the point forming the largest triangle with the previously
+     * kept point and the average of the next bucket.
+     */
+    private static int[] lttb(double[] y, int threshold) {
+        int n = y.length;
+        if (threshold >= n || threshold < 3) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] sampled = new int[threshold];
+        int count = 0;
+        sampled[count++] = 0;
+
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int previous = 0;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+            double avgX = 0.0;
+            double avgY = 0.0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += j;
+                avgY += y[j];
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double ax = previous;
+            double ay = y[previous];
+            double maxArea = -1.0;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - j) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+
+            sampled[count++] = chosen;
+            previous = chosen;
+        }
+
+        sampled[count] = n - 1;
+        return sampled;
+    }
+
+    private static int argMin(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static int argMax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
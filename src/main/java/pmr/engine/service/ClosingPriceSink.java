@@ -0,0 +1,10 @@
+package pmr.engine.service;
+
+/**
+ * Receives closing prices as dense coordinates: the column is the index of
+ * the ticker in the requested ticker array, the day offset is the number
+ * of days since the first requested date.
+ */
+public interface ClosingPriceSink {
+    void accept(int column, int dayOffset, double close);
+}
@@ -0,0 +1,189 @@
+package pmr.engine.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out JDBC connections: writes always go to DB_URL, reads go to one
+ * of the optional DB_REPLICA_URLS (comma separated, same credentials)
+ * when one is healthy. A replica is healthy while its WAL receiver is
+ * streaming and its replay lag, checked every REPLICA_LAG_CHECK_MS, stays
+ * under REPLICA_MAX_LAG_MS. Reading the receiver status needs superuser or
+ * pg_read_all_stats on the replica; without it every replica counts as
+ * disconnected and reads stay on the primary. For
+ * read-your-writes, a user who has just written reads from the primary
+ * for REPLICA_STICKY_MS afterwards. Every node learns of the write from
+ * its PORTFOLIO_SAVED event, so the guarantee holds whichever node the
+ * user's next request lands on; after a bus resync, when events may have
+ * been missed, all reads go to the primary for REPLICA_STICKY_MS.
+ */
+@Service
+public class ConnectionRouter {
+    // A replica cut off from the primary has replayed everything it
+    // received, so receive = replay alone would report it as current.
+    private static final String LAG_QUERY = """
+        SELECT CASE
+                   WHEN NOT pg_is_in_recovery() THEN 0
+                   WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN 'Infinity'::float8
+                   WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                   ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())::float8 * 1000, 'Infinity'::float8)
+               END
+    """;
+
+    private final String dbUrl;
+    private final String user;
+    private final String pass;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final long stickyMillis;
+    private final Map<Long, Long> stickyUntil = new ConcurrentHashMap<>();
+    private volatile long allStickyUntil;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter primaryReads;
+    private final Counter replicaReads;
+
+    private static final class Replica {
+        private final String url;
+        private volatile boolean healthy;
+        private volatile double lagMillis = Double.NaN;
+
+        private Replica(String url) {
+            this.url = url;
+        }
+    }
+
+    public ConnectionRouter(MeterRegistry registry, InvalidationBus invalidationBus) {
+        this.dbUrl = System.getenv("DB_URL");
+        this.user = System.getenv("DB_USER");
+        this.pass = System.getenv("DB_PASS");
+        this.maxLagMillis = Long.parseLong(System.getenv().getOrDefault("REPLICA_MAX_LAG_MS", "1000"));
+        this.stickyMillis = Long.parseLong(System.getenv().getOrDefault("REPLICA_STICKY_MS", "10000"));
+
+        this.replicas = Arrays.stream(System.getenv().getOrDefault("DB_REPLICA_URLS", "").split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(Replica::new)
+                .toList();
+
+        this.primaryReads = Counter.builder("repository.reads").tag("target", "primary").register(registry);
+        this.replicaReads = Counter.builder("repository.reads").tag("target", "replica").register(registry);
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            Gauge.builder("repository.replica.lag", replica, r -> r.lagMillis)
+                    .tag("replica", Integer.toString(i))
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+
+        invalidationBus.subscribe(EnumSet.of(InvalidationEvent.Type.PORTFOLIO_SAVED), new InvalidationBus.Subscriber() {
+            @Override
+            public void onEvent(InvalidationEvent event) {
+                if (event.userId() != null) {
+                    markWritten(event.userId());
+                }
+            }
+
+            @Override
+            public void onResync() {
+                if (!replicas.isEmpty()) {
+                    allStickyUntil = System.currentTimeMillis() + stickyMillis;
+                }
+            }
+        });
+    }
+
+    public Connection primary() throws SQLException {
+        return DriverManager.getConnection(dbUrl, user, pass);
+    }
+
+    /**
+     * A connection for a read-only query. {@code userId} is the user whose
+     * own data is being read, or null for shared data.
+     */
+    public Connection read(Long userId) throws SQLException {
+        if (!replicas.isEmpty() && !isSticky(userId)) {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+                if (!replica.healthy) {
+                    continue;
+                }
+                try {
+                    Connection conn = DriverManager.getConnection(replica.url, user, pass);
+                    conn.setReadOnly(true);
+                    replicaReads.increment();
+                    return conn;
+                } catch (SQLException e) {
+                    replica.healthy = false;
+                    System.err.println("Replica " + replica.url + " unavailable, reading from primary: " + e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary();
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Called after a commit so the user's next reads on this node see their
+     * own write; other nodes get the same from the write's bus event.
+     */
+    public void markWritten(long userId) {
+        if (!replicas.isEmpty()) {
+            stickyUntil.put(userId, System.currentTimeMillis() + stickyMillis);
+        }
+    }
+
+    private boolean isSticky(Long userId) {
+        long now = System.currentTimeMillis();
+        if (allStickyUntil > now) {
+            return true;
+        }
+        Long until = userId == null ? null : stickyUntil.get(userId);
+        return until != null && until > now;
+    }
+
+    @Scheduled(fixedDelayString = "${REPLICA_LAG_CHECK_MS:1000}")
+    public void checkReplicas() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+
+        for (Replica replica : replicas) {
+            try (Connection conn = DriverManager.getConnection(replica.url, user, pass);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(LAG_QUERY)) {
+
+                rs.next();
+                double lag = rs.getDouble(1);
+                boolean healthy = lag <= maxLagMillis;
+                if (healthy != replica.healthy) {
+                    System.out.println("Replica " + replica.url + (healthy ? " healthy"
+                            : Double.isInfinite(lag) ? " not streaming from the primary"
+                            : " lagging by " + (long) lag + " ms"));
+                }
+                replica.lagMillis = lag;
+                replica.healthy = healthy;
+            } catch (SQLException e) {
+                if (replica.healthy) {
+                    System.err.println("Replica " + replica.url + " lag check failed: " + e.getMessage());
+                }
+                replica.lagMillis = Double.NaN;
+                replica.healthy = false;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        stickyUntil.values().removeIf(until -> until <= now);
+    }
+}
@@ -0,0 +1,154 @@
+package pmr.engine.service;
+
+import org.springframework.stereotype.Service;
+import pmr.engine.analysis.CorrelationMatrix;
+import pmr.engine.model.CorrelationReport;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Correlation reports over a user's portfolios or the top of the
+ * leaderboard. Reports are cached in a bounded LRU map until a
+ * PORTFOLIO_SAVED event makes them stale: a save drops that user's report
+ * and every leaderboard report. Entries also expire after
+ * CORRELATION_CACHE_TTL_SECONDS, which bounds how long a report can lag new
+ * closes.
+ */
+@Service
+public class CorrelationReports {
+    public static final int MAX_PORTFOLIOS = Integer.parseInt(System.getenv().getOrDefault("CORRELATION_MAX_PORTFOLIOS", "500"));
+    private static final double CLUSTER_THRESHOLD = Double.parseDouble(System.getenv().getOrDefault("CORRELATION_CLUSTER_THRESHOLD", "0.95"));
+    private static final int CACHE_MAX_ENTRIES = Integer.parseInt(System.getenv().getOrDefault("CORRELATION_CACHE_MAX", "200"));
+    private static final long CACHE_TTL_NANOS = Long.parseLong(System.getenv().getOrDefault("CORRELATION_CACHE_TTL_SECONDS", "900")) * 1_000_000_000L;
+
+    private final Repository repository;
+    private final SingleFlight singleFlight;
+    // Guarded by itself, as is generation.
+    private final Map<Key, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+            return size() > CACHE_MAX_ENTRIES;
+        }
+    };
+    // Bumped on every invalidation; a report computed across a bump is
+    // returned but not cached, since it may predate the save.
+    private long generation;
+
+    private record Key(Long userId, int limit) {
+    }
+
+    private record Cached(CorrelationReport report, long cachedAt) {
+    }
+
+    public CorrelationReports(Repository repository, SingleFlight singleFlight, InvalidationBus invalidationBus) {
+        this.repository = repository;
+        this.singleFlight = singleFlight;
+
+        invalidationBus.subscribe(EnumSet.of(InvalidationEvent.Type.PORTFOLIO_SAVED), new InvalidationBus.Subscriber() {
+            @Override
+            public void onEvent(InvalidationEvent event) {
+                synchronized (cache) {
+                    generation++;
+                    cache.keySet().removeIf(key -> key.userId() == null || key.userId().equals(event.userId()));
+                }
+            }
+
+            @Override
+            public void onResync() {
+                synchronized (cache) {
+                    generation++;
+                    cache.clear();
+                }
+            }
+        });
+    }
+
+    public CorrelationReport forUser(long userId) {
+        return report(new Key(userId, MAX_PORTFOLIOS));
+    }
+
+    public CorrelationReport forLeaderboard(int top) {
+        if (top < 2 || top > MAX_PORTFOLIOS) {
+            throw new IllegalArgumentException("top must be between 2 and " + MAX_PORTFOLIOS);
+        }
+        return report(new Key(null, top));
+    }
+
+    private CorrelationReport report(Key key) {
+        synchronized (cache) {
+            Cached cached = cache.get(key);
+            if (cached != null) {
+                if (System.nanoTime() - cached.cachedAt() < CACHE_TTL_NANOS) {
+                    return cached.report();
+                }
+                cache.remove(key);
+            }
+        }
+
+        return singleFlight.execute("correlationReport", Arrays.asList(key.userId(), key.limit()), () -> {
+            long before;
+            synchronized (cache) {
+                before = generation;
+            }
+            long start = System.nanoTime();
+            CorrelationReport report = build(repository.fetchReturnSeries(key.userId(), key.limit()));
+            synchronized (cache) {
+                if (generation == before) {
+                    cache.put(key, new Cached(report, start));
+                }
+            }
+            return report;
+        });
+    }
+
+    private static CorrelationReport build(List<ReturnSeries> series) {
+        // Shared day axis: every date any series has a return for.
+        TreeSet<LocalDate> days = new TreeSet<>();
+        for (ReturnSeries s : series) {
+            for (int k = 1; k < s.tradingDates().length; k++) {
+                days.add(s.tradingDates()[k]);
+            }
+        }
+        Map<LocalDate, Integer> column = new HashMap<>(days.size() * 2);
+        for (LocalDate day : days) {
+            column.put(day, column.size());
+        }
+
+        int n = series.size();
+        double[][] returns = new double[n][days.size()];
+        for (int i = 0; i < n; i++) {
+            ReturnSeries s = series.get(i);
+            Arrays.fill(returns[i], Double.NaN);
+            for (int k = 0; k < s.dailyReturns().length && k + 1 < s.tradingDates().length; k++) {
+                returns[i][column.get(s.tradingDates()[k + 1])] = s.dailyReturns()[k];
+            }
+        }
+
+        double[][] corr = CorrelationMatrix.compute(returns);
+
+        Double[][] correlations = new Double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                correlations[i][j] = Double.isNaN(corr[i][j]) ? null : corr[i][j];
+            }
+        }
+
+        List<Integer> ids = series.stream().map(ReturnSeries::id).toList();
+        List<List<Integer>> clusters = CorrelationMatrix.clusters(corr, CLUSTER_THRESHOLD).stream()
+                .map(group -> group.stream().map(ids::get).toList())
+                .toList();
+        double average = CorrelationMatrix.averageCorrelation(corr);
+
+        return new CorrelationReport(
+                ids,
+                series.stream().map(ReturnSeries::name).toList(),
+                days.isEmpty() ? null : days.first(),
+                days.isEmpty() ? null : days.last(),
+                correlations,
+                Double.isNaN(average) ? null : average,
+                CLUSTER_THRESHOLD,
+                clusters
+        );
+    }
+}
@@ -0,0 +1,145 @@
+package pmr.engine.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Write-behind batcher. Callers block in {@link #submit} while a single
+ * writer thread gathers concurrent items for up to maxDelayMillis or
+ * maxBatch items and hands them to {@code flush} as one unit, which must
+ * commit before returning a result per item in order. A caller therefore
+ * only ever sees its result after the commit that made it durable.
+ * If a batch fails, its items are retried one at a time so a single bad
+ * item does not fail its neighbours. Items still queued when the writer
+ * stops are failed rather than left waiting, and callers give up after
+ * SUBMIT_TIMEOUT_MS as a last resort.
+ */
+class GroupCommitter<T, R> {
+    private static final long SUBMIT_TIMEOUT_MS = 30_000;
+
+    private final Function<List<T>, List<R>> flush;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending<T, R>> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary batchSize;
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    private record Pending<T, R>(T item, CompletableFuture<R> result) {
+    }
+
+    GroupCommitter(String name, int maxBatch, long maxDelayMillis, Function<List<T>, List<R>> flush, MeterRegistry registry) {
+        this.flush = flush;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.batchSize = DistributionSummary.builder("repository.groupcommit.batch.size")
+                .tag("operation", name)
+                .register(registry);
+
+        this.writer = new Thread(this::drain, name + "-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    R submit(T item) {
+        if (!running) {
+            throw new IllegalStateException("Group commit writer is stopped");
+        }
+        CompletableFuture<R> result = new CompletableFuture<>();
+        queue.add(new Pending<>(item, result));
+        if (!running) {
+            // stop() raced with this submit; the writer may already be gone.
+            failPending();
+        }
+
+        try {
+            return result.get(SUBMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // The item may still be committed; the caller just stops waiting.
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for group commit", e);
+        } catch (TimeoutException e) {
+            // Likewise, the item may still be committed later.
+            throw new RuntimeException("Timed out waiting for group commit", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        }
+    }
+
+    private void drain() {
+        List<Pending<T, R>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<T, R> first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<T, R> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Pending<T, R>> batch) {
+        batchSize.record(batch.size());
+        try {
+            complete(batch, flush.apply(batch.stream().map(Pending::item).toList()));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            for (Pending<T, R> pending : batch) {
+                try {
+                    complete(List.of(pending), flush.apply(List.of(pending.item())));
+                } catch (RuntimeException single) {
+                    pending.result().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private static <T, R> void complete(List<Pending<T, R>> batch, List<R> results) {
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(results.get(i));
+        }
+    }
+
+    void stop() {
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending();
+    }
+
+    private void failPending() {
+        Pending<T, R> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new IllegalStateException("Group commit writer is stopped"));
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package pmr.engine.service;
+
+import org.springframework.stereotype.Service;
+import pmr.engine.model.IngestionRunStatus;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Makes sure only one node runs market data ingestion at a time.
+ *
+ * The leader holds a session-level Postgres advisory lock on a dedicated
+ * connection for the whole run, so the lock is released as soon as that
+ * node's connection dies. The leader also heartbeats a lease row from the
+ * ticker loop itself, once per ticker, so a worker stuck on one ticker
+ * stops heartbeating. A holder whose heartbeat goes stale while it still
+ * holds the lock is treated as hung and its backend is terminated.
+ * Progress is recorded per ticker so whichever node runs next only
+ * processes what is left.
+ *
+ * Run status lives in the database too: ingestion_runs holds each run's
+ * state and ingestion_progress the run and timings of each ticker's last
+ * attempt, so any node can report on a run and history outlives restarts.
+ */
+@Service
+public class IngestionCoordinator {
+    private static final long LOCK_KEY = 0x706d725f696e67L; // "pmr_ing"
+    private static final long STALE_SECONDS = Long.parseLong(System.getenv().getOrDefault("INGESTION_STALE_SECONDS", "300"));
+    private static final int MAX_ATTEMPTS = 3;
+
+    // A bigint advisory key shows up in pg_locks split into classid (high
+    // 32 bits) and objid (low 32 bits), with objsubid 1.
+    private static final String HOLDS_LOCK = """
+        SELECT 1 FROM pg_locks
+        WHERE locktype = 'advisory' AND objsubid = 1 AND granted
+          AND classid::bigint = ? AND objid::bigint = ?
+    """;
+
+    private static final String RUN_COLUMNS = """
+        SELECT id, run_date, trigger, state, message, total_tickers, queued_at, started_at, finished_at
+        FROM ingestion_runs
+    """;
+
+    private final String dbUrl;
+    private final String user;
+    private final String pass;
+    private final String instanceId;
+
+    public IngestionCoordinator() {
+        this.dbUrl = System.getenv("DB_URL");
+        this.user = System.getenv("DB_USER");
+        this.pass = System.getenv("DB_PASS");
+        this.instanceId = Optional.ofNullable(System.getenv("HOSTNAME")).orElse("node") + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Runs {@code work} for every ticker of the run's date that is not yet
+     * done, if this node can become leader, and marks {@code run} running.
+     * Returns false without doing anything when another node holds the
+     * lock.
+     */
+    public boolean runExclusively(IngestionRun run, List<String> tickers, Predicate<String> work) {
+        LocalDate runDate = run.runDate();
+
+        try (Connection lockConn = DriverManager.getConnection(dbUrl, user, pass)) {
+            if (!tryLock(lockConn)) {
+                return false;
+            }
+
+            Lease lease = new Lease(lockConn);
+
+            try {
+                lease.acquire(runDate);
+                registerTickers(runDate, tickers);
+                abandonRuns(run.id());
+                run.started(tickers.size());
+                saveRun(run);
+
+                for (String ticker : remainingTickers(runDate)) {
+                    lease.heartbeat();
+                    if (lease.isLost()) {
+                        System.err.println("Lost ingestion lease, stopping run for " + runDate);
+                        break;
+                    }
+                    if (Thread.currentThread().isInterrupted()) {
+                        System.err.println("Ingestion interrupted, stopping run for " + runDate);
+                        break;
+                    }
+                    recordStart(runDate, ticker, run.id());
+                    recordOutcome(runDate, ticker, work.test(ticker));
+                }
+            } finally {
+                lease.release();
+            }
+
+            return true;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in runExclusively", e);
+        }
+    }
+
+    /**
+     * Writes the current state of {@code run} to ingestion_runs.
+     */
+    public void saveRun(IngestionRun run) {
+        String query = """
+            INSERT INTO ingestion_runs
+                (id, run_date, trigger, state, message, total_tickers, queued_at, started_at, finished_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (id) DO UPDATE SET
+                state = EXCLUDED.state,
+                message = EXCLUDED.message,
+                total_tickers = EXCLUDED.total_tickers,
+                started_at = EXCLUDED.started_at,
+                finished_at = EXCLUDED.finished_at
+        """;
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setObject(1, UUID.fromString(run.id()));
+            stmt.setDate(2, Date.valueOf(run.runDate()));
+            stmt.setString(3, run.trigger());
+            stmt.setString(4, run.state().name());
+            stmt.setString(5, run.message());
+            stmt.setInt(6, run.totalTickers());
+            stmt.setTimestamp(7, timestamp(run.queuedAt()));
+            stmt.setTimestamp(8, timestamp(run.startedAt()));
+            stmt.setTimestamp(9, timestamp(run.finishedAt()));
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in saveRun", e);
+        }
+    }
+
+    /**
+     * Status of one run, as recorded by whichever node ran it.
+     */
+    public Optional<IngestionRunStatus> findRun(String runId) {
+        UUID id;
+        try {
+            id = UUID.fromString(runId);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+
+        String query = RUN_COLUMNS + " WHERE id = ?";
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setObject(1, id);
+            return loadRuns(conn, stmt).stream().findFirst();
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in findRun", e);
+        }
+    }
+
+    /**
+     * The {@code limit} most recently queued runs, newest first.
+     */
+    public List<IngestionRunStatus> recentRuns(int limit) {
+        String query = RUN_COLUMNS + " ORDER BY queued_at DESC LIMIT ?";
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, limit);
+            return loadRuns(conn, stmt);
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in recentRuns", e);
+        }
+    }
+
+    /**
+     * Whether some node currently holds the ingestion lock.
+     */
+    public boolean isLocked() {
+        String query = "SELECT EXISTS (" + HOLDS_LOCK + ")";
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setLong(1, LOCK_KEY >>> 32);
+            stmt.setLong(2, LOCK_KEY & 0xffffffffL);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in isLocked", e);
+        }
+    }
+
+    /**
+     * The most recent run date that still has tickers to retry, if any.
+     */
+    public Optional<LocalDate> findUnfinishedRun() {
+        String query = """
+            SELECT MAX(run_date) FROM ingestion_progress
+            WHERE status <> 'done' AND attempts < ?
+        """;
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, MAX_ATTEMPTS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Date runDate = rs.next() ? rs.getDate(1) : null;
+                return Optional.ofNullable(runDate).map(Date::toLocalDate);
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in findUnfinishedRun", e);
+        }
+    }
+
+    private boolean tryLock(Connection lockConn) throws SQLException {
+        if (tryAdvisoryLock(lockConn)) {
+            return true;
+        }
+
+        // Only a backend that still holds the lock is a takeover target: a
+        // lease row left by an earlier leader, or whose pid has since been
+        // reused by an unrelated backend, must not get anything killed.
+        String staleQuery = """
+            SELECT backend_pid, holder FROM ingestion_lease
+            WHERE id = 1 AND heartbeat_at < now() - make_interval(secs => ?)
+              AND EXISTS (
+        """ + HOLDS_LOCK + """
+                AND pid = ingestion_lease.backend_pid
+              )
+        """;
+        try (PreparedStatement stmt = lockConn.prepareStatement(staleQuery)) {
+            stmt.setLong(1, STALE_SECONDS);
+            stmt.setLong(2, LOCK_KEY >>> 32);
+            stmt.setLong(3, LOCK_KEY & 0xffffffffL);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+
+                System.err.println("Ingestion holder " + rs.getString("holder") + " stopped heartbeating, taking over");
+                try (PreparedStatement terminate = lockConn.prepareStatement("SELECT pg_terminate_backend(?)")) {
+                    terminate.setInt(1, rs.getInt("backend_pid"));
+                    terminate.execute();
+                }
+            }
+        }
+
+        return tryAdvisoryLock(lockConn);
+    }
+
+    private static boolean tryAdvisoryLock(Connection lockConn) throws SQLException {
+        try (PreparedStatement stmt = lockConn.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            stmt.setLong(1, LOCK_KEY);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void registerTickers(LocalDate runDate, List<String> tickers) throws SQLException {
+        String query = """
+            INSERT INTO ingestion_progress (run_date, ticker, status)
+            SELECT ?, ticker, 'pending' FROM unnest(?::varchar[]) AS ticker
+            ON CONFLICT (run_date, ticker) DO NOTHING
+        """;
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setDate(1, Date.valueOf(runDate));
+            stmt.setArray(2, conn.createArrayOf("VARCHAR", tickers.toArray()));
+            stmt.executeUpdate();
+        }
+    }
+
+    private List<String> remainingTickers(LocalDate runDate) throws SQLException {
+        String query = """
+            SELECT ticker FROM ingestion_progress
+            WHERE run_date = ? AND status <> 'done' AND attempts < ?
+            ORDER BY ticker
+        """;
+
+        List<String> tickers = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setDate(1, Date.valueOf(runDate));
+            stmt.setInt(2, MAX_ATTEMPTS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tickers.add(rs.getString(1));
+                }
+            }
+        }
+        return tickers;
+    }
+
+    // Runs still marked running can only belong to a leader that went away
+    // without finishing them, since this node now holds the lock. A run
+    // queued on another node may be about to lose the lock race and record
+    // itself skipped, so a queued run is only abandoned once it has sat
+    // for longer than a heartbeat could go stale.
+    private void abandonRuns(String runId) throws SQLException {
+        String query = """
+            UPDATE ingestion_runs
+            SET state = 'FAILED',
+                message = CASE state
+                    WHEN 'RUNNING' THEN 'Leader stopped before the run finished'
+                    ELSE 'Node stopped before the run started'
+                END,
+                finished_at = now()
+            WHERE id <> ?
+              AND (state = 'RUNNING'
+                   OR (state = 'QUEUED' AND queued_at < now() - make_interval(secs => ?)))
+        """;
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setObject(1, UUID.fromString(runId));
+            stmt.setLong(2, STALE_SECONDS);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void recordStart(LocalDate runDate, String ticker, String runId) throws SQLException {
+        String query = """
+            UPDATE ingestion_progress
+            SET run_id = ?, started_at = now(), finished_at = NULL
+            WHERE run_date = ? AND ticker = ?
+        """;
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setObject(1, UUID.fromString(runId));
+            stmt.setDate(2, Date.valueOf(runDate));
+            stmt.setString(3, ticker);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void recordOutcome(LocalDate runDate, String ticker, boolean succeeded) throws SQLException {
+        String query = """
+            UPDATE ingestion_progress
+            SET status = ?, attempts = attempts + 1, updated_at = now(), finished_at = now()
+            WHERE run_date = ? AND ticker = ?
+        """;
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, succeeded ? "done" : "failed");
+            stmt.setDate(2, Date.valueOf(runDate));
+            stmt.setString(3, ticker);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Runs from the already-bound run query, each with the tickers whose
+    // last attempt it made. A ticker left unfinished by a run that is no
+    // longer active was cut off mid-attempt.
+    private static List<IngestionRunStatus> loadRuns(Connection conn, PreparedStatement runQuery) throws SQLException {
+        record Run(UUID id, LocalDate runDate, String trigger, String state, String message,
+                   int totalTickers, Instant queuedAt, Instant startedAt, Instant finishedAt) {
+        }
+
+        List<Run> runs = new ArrayList<>();
+        try (ResultSet rs = runQuery.executeQuery()) {
+            while (rs.next()) {
+                runs.add(new Run(
+                        rs.getObject("id", UUID.class),
+                        rs.getDate("run_date").toLocalDate(),
+                        rs.getString("trigger"),
+                        rs.getString("state"),
+                        rs.getString("message"),
+                        rs.getInt("total_tickers"),
+                        instant(rs.getTimestamp("queued_at")),
+                        instant(rs.getTimestamp("started_at")),
+                        instant(rs.getTimestamp("finished_at"))
+                ));
+            }
+        }
+        if (runs.isEmpty()) {
+            return List.of();
+        }
+
+        String tickerQuery = """
+            SELECT run_id, ticker, status, started_at, finished_at
+            FROM ingestion_progress
+            WHERE run_id = ANY(?)
+            ORDER BY ticker
+        """;
+
+        Map<UUID, List<IngestionRunStatus.TickerOutcome>> outcomes = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(tickerQuery)) {
+            stmt.setArray(1, conn.createArrayOf("UUID", runs.stream().map(Run::id).toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Instant started = instant(rs.getTimestamp("started_at"));
+                    Instant finished = instant(rs.getTimestamp("finished_at"));
+                    outcomes.computeIfAbsent(rs.getObject("run_id", UUID.class), id -> new ArrayList<>())
+                            .add(new IngestionRunStatus.TickerOutcome(
+                                    rs.getString("ticker"),
+                                    finished != null ? rs.getString("status") : "running",
+                                    started,
+                                    finished != null ? Duration.between(started, finished).toMillis() : null
+                            ));
+                }
+            }
+        }
+
+        List<IngestionRunStatus> statuses = new ArrayList<>(runs.size());
+        for (Run run : runs) {
+            boolean active = run.state().equals("QUEUED") || run.state().equals("RUNNING");
+            List<IngestionRunStatus.TickerOutcome> tickers = new ArrayList<>();
+            int succeeded = 0;
+            int failed = 0;
+            for (IngestionRunStatus.TickerOutcome outcome : outcomes.getOrDefault(run.id(), List.of())) {
+                switch (outcome.status()) {
+                    case "done" -> succeeded++;
+                    case "failed" -> failed++;
+                    default -> {
+                        if (!active) {
+                            outcome = new IngestionRunStatus.TickerOutcome(
+                                    outcome.ticker(), "interrupted", outcome.startedAt(), null);
+                        }
+                    }
+                }
+                tickers.add(outcome);
+            }
+
+            Instant start = run.startedAt() != null ? run.startedAt() : run.queuedAt();
+            Instant end = run.finishedAt();
+            statuses.add(new IngestionRunStatus(
+                    run.id().toString(),
+                    run.runDate(),
+                    run.trigger(),
+                    run.state(),
+                    run.message(),
+                    start,
+                    end,
+                    end != null ? Duration.between(start, end).toMillis() : null,
+                    run.totalTickers(),
+                    succeeded,
+                    failed,
+                    tickers
+            ));
+        }
+        return statuses;
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+
+    private static Instant instant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+
+    private class Lease {
+        private final Connection lockConn;
+        private volatile boolean lost;
+
+        private Lease(Connection lockConn) {
+            this.lockConn = lockConn;
+        }
+
+        private synchronized void acquire(LocalDate runDate) throws SQLException {
+            String query = """
+                INSERT INTO ingestion_lease (id, holder, backend_pid, run_date, acquired_at, heartbeat_at)
+                VALUES (1, ?, pg_backend_pid(), ?, now(), now())
+                ON CONFLICT (id) DO UPDATE SET
+                    holder = EXCLUDED.holder,
+                    backend_pid = EXCLUDED.backend_pid,
+                    run_date = EXCLUDED.run_date,
+                    acquired_at = EXCLUDED.acquired_at,
+                    heartbeat_at = EXCLUDED.heartbeat_at
+            """;
+            try (PreparedStatement stmt = lockConn.prepareStatement(query)) {
+                stmt.setString(1, instanceId);
+                stmt.setDate(2, Date.valueOf(runDate));
+                stmt.executeUpdate();
+            }
+            System.out.println("Ingestion lease acquired by " + instanceId + " for " + runDate);
+        }
+
+        private synchronized void heartbeat() {
+            String query = "UPDATE ingestion_lease SET heartbeat_at = now() WHERE id = 1 AND backend_pid = pg_backend_pid()";
+            try (PreparedStatement stmt = lockConn.prepareStatement(query)) {
+                if (stmt.executeUpdate() == 0) {
+                    lost = true;
+                }
+            } catch (SQLException e) {
+                System.err.println("Ingestion heartbeat failed: " + e.getMessage());
+                lost = true;
+            }
+        }
+
+        private boolean isLost() {
+            return lost;
+        }
+
+        private synchronized void release() {
+            try (PreparedStatement stmt = lockConn.prepareStatement(
+                    "DELETE FROM ingestion_lease WHERE id = 1 AND backend_pid = pg_backend_pid()")) {
+                stmt.executeUpdate();
+            } catch (SQLException e) {
+                System.err.println("Failed to clear ingestion lease: " + e.getMessage());
+            }
+            try (PreparedStatement stmt = lockConn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                stmt.setLong(1, LOCK_KEY);
+                stmt.execute();
+            } catch (SQLException e) {
+                // The lock goes away with the connection, which the caller closes next.
+                System.err.println("Failed to release ingestion lock: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package pmr.engine.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * One ingestion run as seen by the node that runs it. Every state change
+ * is written to ingestion_runs by {@link IngestionCoordinator}, which is
+ * where the status endpoint reads it from.
+ */
+public class IngestionRun {
+    public enum State { QUEUED, RUNNING, SUCCEEDED, SKIPPED, FAILED }
+
+    private final String id = UUID.randomUUID().toString();
+    private final LocalDate runDate;
+    private final String trigger;
+    private final Instant queuedAt = Instant.now();
+
+    private volatile State state = State.QUEUED;
+    private volatile String message;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile int totalTickers;
+
+    IngestionRun(LocalDate runDate, String trigger) {
+        this.runDate = runDate;
+        this.trigger = trigger;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public LocalDate runDate() {
+        return runDate;
+    }
+
+    public boolean isActive() {
+        return state == State.QUEUED || state == State.RUNNING;
+    }
+
+    String trigger() {
+        return trigger;
+    }
+
+    State state() {
+        return state;
+    }
+
+    String message() {
+        return message;
+    }
+
+    Instant queuedAt() {
+        return queuedAt;
+    }
+
+    Instant startedAt() {
+        return startedAt;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    int totalTickers() {
+        return totalTickers;
+    }
+
+    void started(int totalTickers) {
+        this.totalTickers = totalTickers;
+        this.startedAt = Instant.now();
+        this.state = State.RUNNING;
+    }
+
+    void finished(State state, String message) {
+        this.message = message;
+        this.finishedAt = Instant.now();
+        this.state = state;
+    }
+}
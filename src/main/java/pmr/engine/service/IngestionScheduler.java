@@ -0,0 +1,117 @@
+package pmr.engine.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pmr.engine.model.IngestionRunStatus;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs market data ingestion on a dedicated background thread rather than
+ * on the thread that asked for it. Runs start from the API, from the
+ * optional MARKET_DATA_CRON schedule (evaluated in MARKET_DATA_CRON_ZONE),
+ * or from the check for unfinished runs left behind by a failed node.
+ * Only one run is accepted at a time, on this node or on any other.
+ * Run status is written to the database as the run progresses, so the
+ * status endpoint answers the same on every node.
+ */
+@Service
+public class IngestionScheduler {
+    private static final int HISTORY_SIZE = 20;
+    private static final ZoneId MARKET_ZONE = ZoneId.of(System.getenv().getOrDefault("MARKET_DATA_CRON_ZONE", "America/New_York"));
+
+    private final MarketDataFetcher marketDataFetcher;
+    private final IngestionCoordinator coordinator;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "market-data-ingestion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private IngestionRun current;
+
+    public IngestionScheduler(MarketDataFetcher marketDataFetcher, IngestionCoordinator coordinator) {
+        this.marketDataFetcher = marketDataFetcher;
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Queues a run for yesterday's closes, yesterday being taken in the
+     * market's zone rather than the JVM's. Empty when a run is already in
+     * progress here or on another node.
+     */
+    public Optional<IngestionRun> trigger(String trigger) {
+        return start(LocalDate.now(MARKET_ZONE).minusDays(1), trigger);
+    }
+
+    private synchronized Optional<IngestionRun> start(LocalDate runDate, String trigger) {
+        if ((current != null && current.isActive()) || coordinator.isLocked()) {
+            return Optional.empty();
+        }
+
+        IngestionRun run = new IngestionRun(runDate, trigger);
+        coordinator.saveRun(run);
+        current = run;
+
+        executor.execute(() -> execute(run));
+        return Optional.of(run);
+    }
+
+    private void execute(IngestionRun run) {
+        try {
+            if (marketDataFetcher.fetchMarketData(run)) {
+                run.finished(IngestionRun.State.SUCCEEDED, null);
+            } else {
+                run.finished(IngestionRun.State.SKIPPED, "Ingestion already running on another node");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ingestion run " + run.id() + " failed: " + e.getMessage());
+            run.finished(IngestionRun.State.FAILED, e.getMessage());
+        }
+
+        try {
+            coordinator.saveRun(run);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to record ingestion run " + run.id() + ": " + e.getMessage());
+        }
+    }
+
+    public Optional<IngestionRunStatus> find(String runId) {
+        return coordinator.findRun(runId);
+    }
+
+    public List<IngestionRunStatus> recent() {
+        return coordinator.recentRuns(HISTORY_SIZE);
+    }
+
+    @Scheduled(cron = "${MARKET_DATA_CRON:-}", zone = "${MARKET_DATA_CRON_ZONE:America/New_York}")
+    public void scheduledRun() {
+        trigger("schedule").ifPresentOrElse(
+                run -> System.out.println("Scheduled ingestion run " + run.id() + " started for " + run.runDate()),
+                () -> System.out.println("Scheduled ingestion skipped, a run is already in progress"));
+    }
+
+    // Picks up a run left unfinished by a node that crashed or hung. A no-op
+    // while the leader is alive, since the advisory lock is then unavailable.
+    @Scheduled(fixedDelayString = "${INGESTION_RESUME_CHECK_MS:60000}", initialDelayString = "${INGESTION_RESUME_CHECK_MS:60000}")
+    public void resumeUnfinishedRun() {
+        try {
+            coordinator.findUnfinishedRun()
+                    .flatMap(runDate -> start(runDate, "resume"))
+                    .ifPresent(run -> System.out.println("Resuming unfinished ingestion run for " + run.runDate()));
+        } catch (RuntimeException e) {
+            System.err.println("Ingestion resume check failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
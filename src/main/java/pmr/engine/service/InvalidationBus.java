@@ -0,0 +1,175 @@
+package pmr.engine.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.sql.*;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cross-node cache invalidation over Postgres LISTEN/NOTIFY.
+ *
+ * Writers publish typed events, ideally on the connection of the write
+ * itself so the notification is only delivered if the transaction commits.
+ * Each node keeps one listening connection and dispatches events to the
+ * caches subscribed to that type. Notifications sent while the listener
+ * was disconnected are lost, so after every (re)connect all subscribers are
+ * asked to resync from the database.
+ */
+@Service
+public class InvalidationBus {
+    private static final String CHANNEL = "pmr_events";
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL, true);
+
+    private final String dbUrl;
+    private final String user;
+    private final String pass;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public InvalidationBus() {
+        this.dbUrl = System.getenv("DB_URL");
+        this.user = System.getenv("DB_USER");
+        this.pass = System.getenv("DB_PASS");
+    }
+
+    public interface Subscriber {
+        void onEvent(InvalidationEvent event);
+
+        void onResync();
+    }
+
+    public void subscribe(Set<InvalidationEvent.Type> types, Subscriber subscriber) {
+        subscriptions.add(new Subscription(EnumSet.copyOf(types), subscriber));
+    }
+
+    /**
+     * Publishes as part of the caller's transaction: delivered on commit,
+     * dropped on rollback.
+     */
+    public void publish(Connection conn, InvalidationEvent event) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+            stmt.setString(1, CHANNEL);
+            stmt.setString(2, MAPPER.writeValueAsString(event));
+            stmt.execute();
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable event " + event, e);
+        }
+    }
+
+    public void publish(InvalidationEvent event) {
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass)) {
+            publish(conn, event);
+        } catch (SQLException e) {
+            System.err.println("Failed to publish " + event + ": " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "invalidation-bus");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listen() {
+        long backoff = 1000;
+
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(dbUrl, user, pass)) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+
+                backoff = 1000;
+                resyncAll();
+
+                while (running) {
+                    PGNotification[] notifications = pgConn.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Invalidation bus disconnected, retrying in " + backoff + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        InvalidationEvent event;
+        try {
+            event = MAPPER.readValue(payload, InvalidationEvent.class);
+        } catch (Exception e) {
+            System.err.println("Ignoring malformed invalidation event: " + payload);
+            return;
+        }
+        if (event.type() == null) {
+            return;
+        }
+
+        for (Subscription subscription : subscriptions) {
+            if (subscription.types().contains(event.type())) {
+                try {
+                    subscription.subscriber().onEvent(event);
+                } catch (RuntimeException e) {
+                    System.err.println("Subscriber failed on " + event + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void resyncAll() {
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.subscriber().onResync();
+            } catch (RuntimeException e) {
+                System.err.println("Subscriber failed to resync: " + e.getMessage());
+            }
+        }
+    }
+
+    private record Subscription(Set<InvalidationEvent.Type> types, Subscriber subscriber) {
+    }
+}
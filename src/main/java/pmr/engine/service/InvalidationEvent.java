@@ -0,0 +1,9 @@
+package pmr.engine.service;
+
+public record InvalidationEvent(Type type, String key, Long userId) {
+    public enum Type {
+        PORTFOLIO_SAVED,
+        MARKET_DATA_UPDATED,
+        ASSETS_CHANGED
+    }
+}
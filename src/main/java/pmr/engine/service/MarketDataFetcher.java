@@ -1,11 +1,14 @@
 package pmr.engine.service;
 
 import okhttp3.*;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.springframework.stereotype.Service;
+import pmr.engine.diagnostics.IngestionTickerEvent;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
 import java.sql.Connection;
 import java.time.Instant;
@@ -17,121 +20,398 @@ import java.util.List;
 
 @Service
 public class MarketDataFetcher {
+    private static final int MAX_HISTORY_DAYS = 250;
+    private static final int VOLATILITY_WINDOW = 20;
+    private static final JsonFactory JSON = new JsonFactory();
+
     private final OkHttpClient client;
     private final String db_url;
     private final String db_user;
     private final String db_pass;
     private final String api_key;
+    private final String api_base_url;
+    private final long request_interval_ms;
+    private final long backfill_max_days;
+    private final TickerUniverse tickerUniverse;
+    private final IngestionCoordinator coordinator;
+    private final InvalidationBus invalidationBus;
 
-    public MarketDataFetcher() {
+    public MarketDataFetcher(TickerUniverse tickerUniverse, IngestionCoordinator coordinator, InvalidationBus invalidationBus) {
+        this.tickerUniverse = tickerUniverse;
+        this.coordinator = coordinator;
+        this.invalidationBus = invalidationBus;
         client = new OkHttpClient();
         db_url = System.getenv("DB_URL");
         db_user = System.getenv("DB_USER");
         db_pass = System.getenv("DB_PASS");
         api_key = System.getenv("POLYGON_API_KEY");
+        api_base_url = System.getenv().getOrDefault("POLYGON_BASE_URL", "https://api.polygon.io");
+        request_interval_ms = Long.parseLong(System.getenv().getOrDefault("POLYGON_REQUEST_INTERVAL_MS", "12000"));
+        backfill_max_days = Long.parseLong(System.getenv().getOrDefault("INGESTION_BACKFILL_MAX_DAYS", "366"));
     }
 
-    private List<String> fetchTickers() {
-        List<String> tickers = new ArrayList<>();
-        String query = "SELECT ticker FROM assets LIMIT 50";
-        try (Connection conn = DriverManager.getConnection(db_url, db_user, db_pass);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+    private record Bar(LocalDate date, double close) {
+    }
 
-            while (rs.next()) {
-                tickers.add(rs.getString("ticker"));
-            }
+    // Whether the ticker is now up to date, and whether getting there cost
+    // a request to the provider (which is what the rate limit paces).
+    private record Backfill(boolean succeeded, boolean calledApi) {
+    }
 
+    /**
+     * Brings one ticker up to {@code runDate} with a single range request
+     * covering every day it is missing: everything after its watermark, or,
+     * for a ticker without one, everything from its first gap against the
+     * trading calendar. Succeeds without a request when there was nothing
+     * to fetch.
+     */
+    private Backfill backfillHistoricalPrices(String ticker, LocalDate runDate, IngestionTickerEvent event) {
+        LocalDate from;
+        try (Connection conn = DriverManager.getConnection(db_url, db_user, db_pass)) {
+            from = findGapStart(conn, ticker, runDate);
         } catch (SQLException e) {
-            e.printStackTrace();
+            System.err.println("Database error finding gaps for " + ticker + ": " + e.getMessage());
+            return new Backfill(false, false);
         }
 
-        return tickers;
-    }
+        if (from == null) {
+            return new Backfill(true, false);
+        }
+        event.from = from.toString();
 
-    private void fetchAndStoreHistoricalPrices(String ticker) {
-        LocalDate yesterday = LocalDate.now().minusDays(1);
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
         String url = String.format(
-                "https://api.polygon.io/v2/aggs/ticker/%s/range/1/day/%s/%s?adjusted=true&sort=asc&limit=1&apiKey=%s",
+                "%s/v2/aggs/ticker/%s/range/1/day/%s/%s?adjusted=true&sort=asc&limit=50000&apiKey=%s",
+                api_base_url,
                 ticker,
-                yesterday.format(formatter),
-                yesterday.format(formatter),
+                from.format(formatter),
+                runDate.format(formatter),
                 api_key
         );
 
-        try {
-            Request request = new Request.Builder().url(url).build();
-            Response response = client.newCall(request).execute();
-
+        List<Bar> bars;
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = client.newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 System.err.println("HTTP error for " + ticker + ": " + response.code() + " - " + response.message());
-                return;
+                return new Backfill(false, true);
             }
+            bars = parseBars(response.body().byteStream());
+            event.barsFetched = bars.size();
+        } catch (IOException e) {
+            System.err.println("Error fetching or parsing market data for " + ticker + ": " + e.getMessage());
+            return new Backfill(false, true);
+        }
+
+        if (bars.isEmpty()) {
+            System.out.println("No trading data for " + ticker + " from " + from + " to " + runDate + " — skipping.");
+            return new Backfill(true, true);
+        }
 
-            String json = response.body().string();
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(json);
+        try (Connection conn = DriverManager.getConnection(db_url, db_user, db_pass)) {
+            conn.setAutoCommit(false);
 
-            if (!root.has("results") || !root.get("results").isArray() || root.get("results").isEmpty()) {
-                System.out.println("No trading data for " + ticker + " on " + yesterday + " — skipping.");
-                return;
+            List<LocalDate> inserted = storeBars(conn, ticker, bars);
+            event.rowsInserted = inserted.size();
+            pruneHistory(conn, ticker);
+            if (!inserted.isEmpty()) {
+                updateDerivedSeries(conn, ticker, inserted.get(0));
             }
+            advanceWatermark(conn, ticker, bars.get(bars.size() - 1).date());
+
+            conn.commit();
+            System.out.println("Saved " + inserted.size() + " days of market data for " + ticker + " from " + from + " to " + runDate);
+            return new Backfill(true, true);
+
+        } catch (SQLException dbException) {
+            System.err.println("Database error storing market data for " + ticker + ": " + dbException.getMessage());
+            return new Backfill(false, true);
+        }
+    }
+
+    private LocalDate findGapStart(Connection conn, String ticker, LocalDate runDate) throws SQLException {
+        String query = """
+            SELECT (SELECT checked_through FROM ingestion_watermarks WHERE ticker = ?) AS checked_through,
+                   (SELECT MAX(date) FROM historical_prices WHERE ticker = ?) AS last_date,
+                   (SELECT MIN(c.date) FROM trading_calendar c
+                    WHERE c.date BETWEEN ? AND ?
+                      AND NOT EXISTS (
+                          SELECT 1 FROM historical_prices h WHERE h.ticker = ? AND h.date = c.date
+                      )) AS first_gap
+        """;
 
-            JsonNode result = root.get("results").get(0);
-            long timestampMillis = result.get("t").asLong();
-            double close = result.get("c").asDouble();
-            LocalDate date = Instant.ofEpochMilli(timestampMillis).atZone(ZoneOffset.UTC).toLocalDate();
+        LocalDate windowStart = runDate.minusDays(backfill_max_days);
 
-            try (Connection conn = DriverManager.getConnection(db_url, db_user, db_pass)) {
-                conn.setAutoCommit(false);
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, ticker);
+            stmt.setString(2, ticker);
+            stmt.setDate(3, java.sql.Date.valueOf(windowStart));
+            stmt.setDate(4, java.sql.Date.valueOf(runDate));
+            stmt.setString(5, ticker);
 
-                String insertQuery = "INSERT INTO historical_prices (ticker, date, close) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
-                try (PreparedStatement insertStmt = conn.prepareStatement(insertQuery)) {
-                    insertStmt.setString(1, ticker);
-                    insertStmt.setDate(2, java.sql.Date.valueOf(date));
-                    insertStmt.setDouble(3, close);
-                    insertStmt.executeUpdate();
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                java.sql.Date checkedThrough = rs.getDate("checked_through");
+                java.sql.Date lastDate = rs.getDate("last_date");
+                java.sql.Date firstGap = rs.getDate("first_gap");
+
+                LocalDate from;
+                if (checkedThrough != null) {
+                    from = checkedThrough.toLocalDate().plusDays(1);
+                } else {
+                    from = lastDate != null ? lastDate.toLocalDate().plusDays(1) : windowStart;
+                    if (firstGap != null && firstGap.toLocalDate().isBefore(from)) {
+                        from = firstGap.toLocalDate();
+                    }
+                }
+                if (from.isBefore(windowStart)) {
+                    from = windowStart;
+                }
+                return from.isAfter(runDate) ? null : from;
+            }
+        }
+    }
+
+    // Aggregates responses can be large for long ranges, so only t and c of
+    // each bar are read off the stream; everything else is skipped.
+    private static List<Bar> parseBars(InputStream body) throws IOException {
+        List<Bar> bars = new ArrayList<>();
+
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"results".equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
                 }
 
-                String countQuery = "SELECT COUNT(*) FROM historical_prices WHERE ticker = ?";
-                try (PreparedStatement countStmt = conn.prepareStatement(countQuery)) {
-                    countStmt.setString(1, ticker);
-                    ResultSet rs = countStmt.executeQuery();
-                    if (rs.next() && rs.getInt(1) > 250) {
-                        String deleteQuery = "DELETE FROM historical_prices WHERE (ticker, date) IN (" +
-                                "SELECT ticker, date FROM historical_prices WHERE ticker = ? ORDER BY date ASC LIMIT 1)";
-                        try (PreparedStatement deleteStmt = conn.prepareStatement(deleteQuery)) {
-                            deleteStmt.setString(1, ticker);
-                            deleteStmt.executeUpdate();
-                            System.out.println("Deleted oldest record for " + ticker);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    long timestampMillis = -1;
+                    double close = Double.NaN;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        switch (name) {
+                            case "t" -> timestampMillis = parser.getLongValue();
+                            case "c" -> close = parser.getDoubleValue();
+                            default -> parser.skipChildren();
                         }
                     }
+                    if (timestampMillis >= 0 && !Double.isNaN(close)) {
+                        LocalDate date = Instant.ofEpochMilli(timestampMillis).atZone(ZoneOffset.UTC).toLocalDate();
+                        bars.add(new Bar(date, close));
+                    }
                 }
+            }
+        }
+
+        return bars;
+    }
 
-                conn.commit();
-                System.out.println("Saved recent market data for " + ticker + " on " + date);
+    // Inserts the closes and counts them into trading_calendar in one
+    // statement. Returns the dates actually inserted, oldest first.
+    private List<LocalDate> storeBars(Connection conn, String ticker, List<Bar> bars) throws SQLException {
+        String query = """
+            WITH inserted AS (
+                INSERT INTO historical_prices (ticker, date, close)
+                SELECT ?, d, c FROM unnest(?::date[], ?::float8[]) AS b(d, c)
+                ON CONFLICT DO NOTHING
+                RETURNING date
+            ), calendar AS (
+                INSERT INTO trading_calendar (date, ticker_count)
+                SELECT date, COUNT(*) FROM inserted GROUP BY date
+                ON CONFLICT (date) DO UPDATE SET ticker_count = trading_calendar.ticker_count + EXCLUDED.ticker_count
+            )
+            SELECT date FROM inserted ORDER BY date
+        """;
 
-            } catch (SQLException dbException) {
-                System.err.println("Database error for fetching market data for " + ticker + ": " + dbException.getMessage());
+        java.sql.Date[] dates = new java.sql.Date[bars.size()];
+        Double[] closes = new Double[bars.size()];
+        for (int i = 0; i < bars.size(); i++) {
+            dates[i] = java.sql.Date.valueOf(bars.get(i).date());
+            closes[i] = bars.get(i).close();
+        }
+
+        List<LocalDate> inserted = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, ticker);
+            stmt.setArray(2, conn.createArrayOf("DATE", dates));
+            stmt.setArray(3, conn.createArrayOf("FLOAT8", closes));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    inserted.add(rs.getDate(1).toLocalDate());
+                }
             }
+        }
+        inserted.sort(null);
+        return inserted;
+    }
+
+    // Keeps the newest MAX_HISTORY_DAYS closes per ticker, and in the same
+    // statement uncounts them from trading_calendar, dropping dates left
+    // with no closes. The two calendar changes touch disjoint rows, as
+    // one statement may not modify a row twice.
+    private void pruneHistory(Connection conn, String ticker) throws SQLException {
+        String query = """
+            WITH deleted AS (
+                DELETE FROM historical_prices
+                WHERE ticker = ? AND date < (
+                    SELECT date FROM historical_prices WHERE ticker = ?
+                    ORDER BY date DESC OFFSET ? LIMIT 1
+                )
+                RETURNING date
+            ), removed AS (
+                SELECT date, COUNT(*) AS n FROM deleted GROUP BY date
+            ), emptied AS (
+                DELETE FROM trading_calendar c
+                USING removed r
+                WHERE c.date = r.date AND c.ticker_count <= r.n
+            )
+            UPDATE trading_calendar c
+            SET ticker_count = c.ticker_count - r.n
+            FROM removed r
+            WHERE c.date = r.date AND c.ticker_count > r.n
+        """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, ticker);
+            stmt.setString(2, ticker);
+            stmt.setInt(3, MAX_HISTORY_DAYS - 1);
+            stmt.executeUpdate();
+        }
+    }
 
-        } catch (IOException | NullPointerException e) {
-            System.err.println("Database error for fetching or parsing market data for " + ticker + ": " + e.getMessage());
+    /**
+     * Brings ticker_returns up to date from {@code since}, the oldest newly
+     * inserted close, reading back just enough earlier closes for the first
+     * return and the 20-day volatility window. Then drops returns whose
+     * previous close was pruned and refreshes ticker_stats.
+     */
+    private void updateDerivedSeries(Connection conn, String ticker, LocalDate since) throws SQLException {
+        String upsertQuery = """
+            WITH priced AS (
+                SELECT date, close, LAG(close) OVER (ORDER BY date) AS prev
+                FROM historical_prices
+                WHERE ticker = ? AND date >= COALESCE((
+                    SELECT date FROM historical_prices
+                    WHERE ticker = ? AND date < ?
+                    ORDER BY date DESC OFFSET ? LIMIT 1
+                ), '-infinity'::date)
+            ), returns AS (
+                SELECT date, close / prev - 1 AS simple_return, ln(close / prev) AS log_return
+                FROM priced
+                WHERE prev > 0 AND close > 0
+            ), rolled AS (
+                SELECT date, simple_return, log_return,
+                       CASE WHEN COUNT(*) OVER w = ? THEN stddev_samp(simple_return) OVER w END AS volatility
+                FROM returns
+                WINDOW w AS (ORDER BY date ROWS BETWEEN ? PRECEDING AND CURRENT ROW)
+            )
+            INSERT INTO ticker_returns (ticker, date, simple_return, log_return, volatility_20d)
+            SELECT ?, date, simple_return, log_return, volatility FROM rolled WHERE date >= ?
+            ON CONFLICT (ticker, date) DO UPDATE SET
+                simple_return = EXCLUDED.simple_return,
+                log_return = EXCLUDED.log_return,
+                volatility_20d = EXCLUDED.volatility_20d
+        """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(upsertQuery)) {
+            stmt.setString(1, ticker);
+            stmt.setString(2, ticker);
+            stmt.setDate(3, java.sql.Date.valueOf(since));
+            stmt.setInt(4, VOLATILITY_WINDOW);
+            stmt.setInt(5, VOLATILITY_WINDOW);
+            stmt.setInt(6, VOLATILITY_WINDOW - 1);
+            stmt.setString(7, ticker);
+            stmt.setDate(8, java.sql.Date.valueOf(since));
+            stmt.executeUpdate();
+        }
+
+        String pruneQuery = """
+            DELETE FROM ticker_returns
+            WHERE ticker = ? AND date <= (SELECT MIN(date) FROM historical_prices WHERE ticker = ?)
+        """;
+        try (PreparedStatement stmt = conn.prepareStatement(pruneQuery)) {
+            stmt.setString(1, ticker);
+            stmt.setString(2, ticker);
+            stmt.executeUpdate();
+        }
+
+        String statsQuery = """
+            INSERT INTO ticker_stats (ticker, num_returns, first_date, last_date, mean_return, volatility, mean_log_return, updated_at)
+            SELECT ?, COUNT(*), MIN(date), MAX(date), AVG(simple_return), stddev_samp(simple_return), AVG(log_return), now()
+            FROM ticker_returns
+            WHERE ticker = ?
+            ON CONFLICT (ticker) DO UPDATE SET
+                num_returns = EXCLUDED.num_returns,
+                first_date = EXCLUDED.first_date,
+                last_date = EXCLUDED.last_date,
+                mean_return = EXCLUDED.mean_return,
+                volatility = EXCLUDED.volatility,
+                mean_log_return = EXCLUDED.mean_log_return,
+                updated_at = EXCLUDED.updated_at
+        """;
+        try (PreparedStatement stmt = conn.prepareStatement(statsQuery)) {
+            stmt.setString(1, ticker);
+            stmt.setString(2, ticker);
+            stmt.executeUpdate();
         }
     }
 
-    public void fetchMarketData() {
-        List<String> tickers = fetchTickers();
-        for (String ticker : tickers) {
-            fetchAndStoreHistoricalPrices(ticker);
+    private void advanceWatermark(Connection conn, String ticker, LocalDate date) throws SQLException {
+        String query = """
+            INSERT INTO ingestion_watermarks (ticker, checked_through) VALUES (?, ?)
+            ON CONFLICT (ticker) DO UPDATE
+                SET checked_through = GREATEST(ingestion_watermarks.checked_through, EXCLUDED.checked_through)
+        """;
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, ticker);
+            stmt.setDate(2, java.sql.Date.valueOf(date));
+            stmt.executeUpdate();
+        }
+    }
 
-            try {
-                Thread.sleep(12000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    /**
+     * Ingests closes up to the run date of {@code run}, backfilling any
+     * days missed since each ticker's last successful fetch. Returns false
+     * if another node is already running ingestion.
+     */
+    public boolean fetchMarketData(IngestionRun run) {
+        LocalDate runDate = run.runDate();
+        List<String> tickers = tickerUniverse.all();
+        boolean ran = coordinator.runExclusively(run, tickers, ticker -> {
+            IngestionTickerEvent event = new IngestionTickerEvent();
+            event.ticker = ticker;
+            event.runDate = runDate.toString();
+            event.begin();
+
+            Backfill backfill = backfillHistoricalPrices(ticker, runDate, event);
+
+            event.succeeded = backfill.succeeded();
+            event.commit();
+
+            // Rate-limit only real API calls, so a ticker with nothing
+            // missing costs no wait.
+            if (backfill.calledApi()) {
+                try {
+                    Thread.sleep(request_interval_ms);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
+
+            return backfill.succeeded();
+        });
+
+        if (ran) {
+            invalidationBus.publish(new InvalidationEvent(
+                    InvalidationEvent.Type.MARKET_DATA_UPDATED, runDate.toString(), null));
         }
+        return ran;
     }
-}
\ No newline at end of file
+}
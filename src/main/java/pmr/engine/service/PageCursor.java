@@ -0,0 +1,62 @@
+package pmr.engine.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor: the sort key and id of the last row on a page,
+ * base64url-encoded so clients pass it back untouched.
+ */
+public record PageCursor(String key, int id) {
+    private static final int DEFAULT_PAGE_SIZE = envInt("PAGE_SIZE", 20);
+    private static final int MAX_PAGE_SIZE = envInt("PAGE_SIZE_MAX", 100);
+
+    public String encode() {
+        String raw = key + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public double doubleKey() {
+        return Double.parseDouble(key);
+    }
+
+    public Instant instantKey() {
+        try {
+            return Instant.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid page cursor", e);
+        }
+    }
+
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new PageCursor(raw.substring(0, separator), Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid page cursor", e);
+        }
+    }
+
+    public static int pageSize(Integer requested) {
+        return pageSize(requested, DEFAULT_PAGE_SIZE);
+    }
+
+    public static int pageSize(Integer requested, int defaultSize) {
+        if (requested == null) {
+            return Math.min(defaultSize, MAX_PAGE_SIZE);
+        }
+        return Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,89 @@
+package pmr.engine.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password hashing and checks on a small pool sized to the machine's cores
+ * so a burst of sign-ins queues here instead of occupying servlet threads.
+ * When the queue is full, work is refused with RejectedExecutionException.
+ */
+@Service
+public class PasswordVerifier {
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Timer hashTimer;
+    private final long timeoutMillis;
+    private final String dummyHash;
+
+    public PasswordVerifier(PasswordEncoder passwordEncoder, MeterRegistry registry) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeoutMillis = envInt("AUTH_HASH_TIMEOUT_MS", 5000);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(envInt("AUTH_HASH_QUEUE_CAPACITY", 64)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        // Checked against when the username does not exist, so unknown and
+        // known users take the same time to reject.
+        this.dummyHash = passwordEncoder.encode("not-a-real-password");
+
+        this.hashTimer = Timer.builder("auth.password.hash").register(registry);
+        Gauge.builder("auth.password.queue", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("auth.password.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        String hash = encodedPassword != null ? encodedPassword : dummyHash;
+        return run(() -> passwordEncoder.matches(rawPassword, hash)) && encodedPassword != null;
+    }
+
+    public String encode(String rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    private <T> T run(Callable<T> hashing) {
+        Future<T> result = executor.submit(() -> hashTimer.recordCallable(hashing));
+
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new RejectedExecutionException("Password hashing timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted during password hashing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Password hashing failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
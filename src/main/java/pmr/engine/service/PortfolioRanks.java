@@ -0,0 +1,288 @@
+package pmr.engine.service;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Where a Sharpe ratio or VaR stands among every analyzed portfolio,
+ * without scanning the portfolios table. Both metrics are kept in a
+ * {@link RankedValues}; the ids already counted are kept in a bit set so
+ * adding a portfolio twice, once from the local save and once from its
+ * PORTFOLIO_SAVED event, counts it once.
+ *
+ * Built from the primary at startup. A bus resync reaches every node at
+ * once, so each waits a random delay of up to RANK_RESYNC_JITTER_MS and
+ * then only rebuilds if the primary's portfolio count differs from the
+ * ids already counted; portfolios are never updated or deleted, so equal
+ * counts mean no save was missed. Until the first build finishes, lookups
+ * return null. Rebuilds and the lookups for saves on other nodes both run
+ * on the {@code rebuilder} thread, never on the bus listener.
+ */
+@Service
+public class PortfolioRanks {
+    private static final int FETCH_SIZE = 10_000;
+    private static final long RESYNC_JITTER_MS = Long.parseLong(System.getenv().getOrDefault("RANK_RESYNC_JITTER_MS", "30000"));
+
+    private final ConnectionRouter connectionRouter;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "portfolio-ranks");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by lock. While a rebuild runs, adds are also queued in
+    // pending and replayed onto the rebuilt index.
+    private BitSet ids = new BitSet();
+    private RankedValues sharpe;
+    private RankedValues valueAtRisk;
+    private List<Entry> pending;
+
+    private record Entry(int id, double sharpe, double valueAtRisk) {
+    }
+
+    public PortfolioRanks(ConnectionRouter connectionRouter, InvalidationBus invalidationBus) {
+        this.connectionRouter = connectionRouter;
+
+        invalidationBus.subscribe(EnumSet.of(InvalidationEvent.Type.PORTFOLIO_SAVED), new InvalidationBus.Subscriber() {
+            @Override
+            public void onEvent(InvalidationEvent event) {
+                int id = Integer.parseInt(event.key());
+                rebuilder.execute(() -> addSaved(id));
+            }
+
+            @Override
+            public void onResync() {
+                long delay = RESYNC_JITTER_MS > 0 ? ThreadLocalRandom.current().nextLong(RESYNC_JITTER_MS) : 0;
+                rebuilder.schedule(PortfolioRanks.this::rebuildIfMissed, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuilder.execute(this::rebuild);
+    }
+
+    /** Counts a newly saved portfolio; no-op if it is already counted. */
+    public void add(int id, double sharpeRatio, double valueAtRiskValue) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(new Entry(id, sharpeRatio, valueAtRiskValue));
+            }
+            insert(id, sharpeRatio, valueAtRiskValue);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 1 + the number of portfolios with a strictly higher Sharpe ratio. */
+    public Integer sharpeRank(double sharpeRatio) {
+        lock.readLock().lock();
+        try {
+            if (sharpe == null || Double.isNaN(sharpeRatio)) {
+                return null;
+            }
+            return sharpe.countAbove(sharpeRatio) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Percentage of portfolios whose Sharpe ratio is at or below this one. */
+    public Double sharpePercentile(double sharpeRatio) {
+        lock.readLock().lock();
+        try {
+            if (sharpe == null || sharpe.size() == 0 || Double.isNaN(sharpeRatio)) {
+                return null;
+            }
+            int n = sharpe.size();
+            return 100.0 * (n - sharpe.countAbove(sharpeRatio)) / n;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Percentage of portfolios whose VaR is at or above this one; lower VaR
+     * ranks better, as for best_value_at_risk.
+     */
+    public Double valueAtRiskPercentile(double valueAtRiskValue) {
+        lock.readLock().lock();
+        try {
+            if (valueAtRisk == null || valueAtRisk.size() == 0 || Double.isNaN(valueAtRiskValue)) {
+                return null;
+            }
+            int n = valueAtRisk.size();
+            return 100.0 * (n - valueAtRisk.countBelow(valueAtRiskValue)) / n;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A save on another node: look the metrics up unless already counted.
+    private void addSaved(int id) {
+        lock.readLock().lock();
+        try {
+            if (ids.get(id)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        String query = "SELECT sharpe_ratio, value_at_risk FROM portfolios WHERE id = ?";
+
+        try (Connection conn = connectionRouter.primary();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    add(id, rs.getDouble(1), rs.getDouble(2));
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Failed to rank portfolio " + id + ": " + e.getMessage());
+        }
+    }
+
+    // After a resync: the saves missed while disconnected are exactly the
+    // portfolios not yet counted, so a matching count means nothing was.
+    private void rebuildIfMissed() {
+        String query = "SELECT COUNT(*) FROM portfolios WHERE start_date IS NOT NULL";
+
+        int counted;
+        lock.readLock().lock();
+        try {
+            counted = sharpe == null ? -1 : ids.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (counted >= 0) {
+            try (Connection conn = connectionRouter.primary();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+
+                rs.next();
+                if (rs.getLong(1) == counted) {
+                    return;
+                }
+
+            } catch (SQLException e) {
+                System.err.println("Portfolio rank check failed, rebuilding: " + e.getMessage());
+            }
+        }
+
+        rebuild();
+    }
+
+    private void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        String query = """
+            SELECT id, sharpe_ratio, value_at_risk
+            FROM portfolios
+            WHERE start_date IS NOT NULL
+        """;
+
+        BitSet builtIds = new BitSet();
+        double[] sharpes = new double[1024];
+        double[] risks = new double[1024];
+        int count = 0;
+        int risksCount = 0;
+
+        long start = System.nanoTime();
+        try (Connection conn = connectionRouter.primary()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        builtIds.set(rs.getInt(1));
+                        double s = rs.getDouble(2);
+                        double v = rs.getDouble(3);
+                        if (!Double.isNaN(s)) {
+                            if (count == sharpes.length) {
+                                sharpes = Arrays.copyOf(sharpes, count * 2);
+                            }
+                            sharpes[count++] = s;
+                        }
+                        if (!Double.isNaN(v)) {
+                            if (risksCount == risks.length) {
+                                risks = Arrays.copyOf(risks, risksCount * 2);
+                            }
+                            risks[risksCount++] = v;
+                        }
+                    }
+                }
+            }
+            conn.commit();
+
+        } catch (SQLException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            System.err.println("Portfolio rank rebuild failed: " + e.getMessage());
+            return;
+        }
+
+        RankedValues builtSharpe = new RankedValues(sharpes, count);
+        RankedValues builtRisk = new RankedValues(risks, risksCount);
+
+        lock.writeLock().lock();
+        try {
+            ids = builtIds;
+            sharpe = builtSharpe;
+            valueAtRisk = builtRisk;
+            for (Entry entry : pending) {
+                insert(entry.id(), entry.sharpe(), entry.valueAtRisk());
+            }
+            pending = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        System.out.println("Ranked " + builtIds.cardinality() + " portfolios in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Caller holds the write lock.
+    private void insert(int id, double sharpeRatio, double valueAtRiskValue) {
+        if (ids.get(id)) {
+            return;
+        }
+        ids.set(id);
+        if (sharpe != null && !Double.isNaN(sharpeRatio)) {
+            sharpe.add(sharpeRatio);
+        }
+        if (valueAtRisk != null && !Double.isNaN(valueAtRiskValue)) {
+            valueAtRisk.add(valueAtRiskValue);
+        }
+    }
+}
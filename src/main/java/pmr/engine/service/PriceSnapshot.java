@@ -0,0 +1,413 @@
+package pmr.engine.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-only copy of historical_prices and trading_calendar kept in a
+ * memory-mapped file (PRICE_SNAPSHOT_PATH) so a restarted node can serve
+ * analyses without reloading prices from Postgres.
+ *
+ * On startup the file is mapped and its fingerprint, the historical_prices
+ * version in table_versions that triggers bump with every change,
+ * compared with the primary; only on a mismatch are prices loaded from the
+ * database and the file rewritten. The rebuild reads from a replica once
+ * it has replayed at least the primary's version, waiting up to
+ * PRICE_SNAPSHOT_REPLICA_WAIT_MS for one to catch up, so a fleet of cold
+ * nodes does not scan historical_prices on the primary all at once; only
+ * without a caught-up replica does it read the primary. Point
+ * PRICE_SNAPSHOT_PATH at a persistent volume (the image uses
+ * /var/lib/pmr) so restarts skip the rebuild altogether.
+ * MARKET_DATA_UPDATED events and bus resyncs trigger the
+ * same check in the background, and the previous snapshot keeps serving
+ * until the new one is mapped. A file that cannot be mapped or fails its
+ * bounds checks counts as a mismatch and is rebuilt; if the refresh itself
+ * fails, the snapshot is dropped and prices are read from the database
+ * until the next refresh succeeds. Set PRICE_SNAPSHOT=off to always read
+ * prices from the database.
+ *
+ * File layout (big-endian): a fixed header, the calendar as epoch days
+ * (int[days]), the tickers as length-prefixed UTF-8, then closes as
+ * double[tickers][days], 8-byte aligned, NaN where a ticker has no close.
+ */
+@Service
+public class PriceSnapshot {
+    private static final int MAGIC = 0x504d5253; // "PMRS"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 28;
+    private static final String VERSION_QUERY = "SELECT version FROM table_versions WHERE table_name = 'historical_prices'";
+    private static final long REPLICA_WAIT_MS = Long.parseLong(System.getenv().getOrDefault("PRICE_SNAPSHOT_REPLICA_WAIT_MS", "10000"));
+    private static final long REPLICA_POLL_MS = 500;
+
+    private final ConnectionRouter connectionRouter;
+    private final boolean enabled;
+    private final Path path;
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Snapshot current;
+
+    private record Fingerprint(long pricesVersion) {
+    }
+
+    private record Snapshot(
+            Fingerprint fingerprint,
+            int[] days,
+            List<LocalDate> dates,
+            Map<String, Integer> columns,
+            DoubleBuffer closes
+    ) {
+    }
+
+    public PriceSnapshot(ConnectionRouter connectionRouter, InvalidationBus invalidationBus) {
+        this.connectionRouter = connectionRouter;
+        this.enabled = !"off".equalsIgnoreCase(System.getenv("PRICE_SNAPSHOT"));
+        this.path = Path.of(System.getenv().getOrDefault("PRICE_SNAPSHOT_PATH",
+                Path.of(System.getProperty("java.io.tmpdir"), "pmr-prices.snapshot").toString()));
+
+        invalidationBus.subscribe(EnumSet.of(InvalidationEvent.Type.MARKET_DATA_UPDATED), new InvalidationBus.Subscriber() {
+            @Override
+            public void onEvent(InvalidationEvent event) {
+                refreshAsync();
+            }
+
+            @Override
+            public void onResync() {
+                refreshAsync();
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    /** The calendar of the current snapshot, if one is mapped. */
+    public Optional<List<LocalDate>> tradingDates() {
+        Snapshot s = current;
+        return s == null ? Optional.empty() : Optional.of(s.dates());
+    }
+
+    /**
+     * Same contract as {@link Repository#fetchClosingPrices}, served from
+     * the mapped file. Returns false, without touching {@code sink}, when no
+     * snapshot is mapped.
+     */
+    public boolean readClosingPrices(String[] tickers, List<LocalDate> dates, ClosingPriceSink sink) {
+        Snapshot s = current;
+        if (s == null) {
+            return false;
+        }
+        if (tickers.length == 0 || dates.isEmpty()) {
+            return true;
+        }
+
+        long first = dates.get(0).toEpochDay();
+        long last = dates.get(dates.size() - 1).toEpochDay();
+        int numDays = s.days().length;
+        int from = lowerBound(s.days(), first);
+        int to = lowerBound(s.days(), last + 1);
+
+        for (int c = 0; c < tickers.length; c++) {
+            Integer column = s.columns().get(tickers[c]);
+            if (column == null) {
+                continue;
+            }
+            int base = column * numDays;
+            for (int d = from; d < to; d++) {
+                double close = s.closes().get(base + d);
+                if (!Double.isNaN(close)) {
+                    sink.accept(c, (int) (s.days()[d] - first), close);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void refreshAsync() {
+        if (enabled) {
+            refresher.execute(this::refresh);
+        }
+    }
+
+    private synchronized void refresh() {
+        try {
+            Fingerprint expected = fetchFingerprint();
+            if (current != null && current.fingerprint().equals(expected)) {
+                return;
+            }
+
+            long started = System.nanoTime();
+            Snapshot mapped;
+            try {
+                mapped = map();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Price snapshot " + path + " is unreadable, rebuilding: " + e.getMessage());
+                mapped = null;
+            }
+            if (mapped != null && mapped.fingerprint().equals(expected)) {
+                current = mapped;
+                System.out.println("Mapped price snapshot " + path + " (" + mapped.columns().size() + " tickers x "
+                        + mapped.days().length + " days) in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+                return;
+            }
+
+            writeFromDatabase(expected);
+            current = map();
+            System.out.println("Rebuilt price snapshot " + path + " from the database in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms");
+        } catch (IOException | SQLException | RuntimeException e) {
+            // The old snapshot may be the very thing that is stale, so
+            // fall back to the database rather than keep serving it.
+            current = null;
+            System.err.println("Price snapshot refresh failed, reading prices from the database: " + e.getMessage());
+        }
+    }
+
+    private Fingerprint fetchFingerprint() throws SQLException {
+        try (Connection conn = connectionRouter.primary();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(VERSION_QUERY)) {
+            return fingerprint(rs);
+        }
+    }
+
+    private static Fingerprint fingerprint(ResultSet rs) throws SQLException {
+        return new Fingerprint(rs.next() ? rs.getLong(1) : Long.MIN_VALUE);
+    }
+
+    private Snapshot map() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            return null;
+        }
+        Fingerprint fingerprint = new Fingerprint(buffer.getLong(8));
+        int numTickers = buffer.getInt(16);
+        int numDays = buffer.getInt(20);
+        int closesOffset = buffer.getInt(24);
+
+        // Sizes come from the file, so check them against it before
+        // allocating or reading anything they point at.
+        long capacity = buffer.capacity();
+        if (numTickers < 0 || numDays < 0 || closesOffset < HEADER_BYTES
+                || HEADER_BYTES + (long) numDays * 4 > closesOffset
+                || (long) closesOffset + (long) numTickers * numDays * Double.BYTES > capacity) {
+            return null;
+        }
+
+        int[] days = new int[numDays];
+        List<LocalDate> dates = new ArrayList<>(numDays);
+        int position = HEADER_BYTES;
+        for (int d = 0; d < numDays; d++) {
+            days[d] = buffer.getInt(position);
+            dates.add(LocalDate.ofEpochDay(days[d]));
+            position += 4;
+        }
+
+        Map<String, Integer> columns = new HashMap<>(numTickers * 2);
+        for (int t = 0; t < numTickers; t++) {
+            if (position + 2 > closesOffset) {
+                return null;
+            }
+            int length = buffer.getShort(position) & 0xffff;
+            if (position + 2 + length > closesOffset) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position + 2, bytes);
+            columns.put(new String(bytes, StandardCharsets.UTF_8), t);
+            position += 2 + length;
+        }
+
+        DoubleBuffer closes = buffer.slice(closesOffset, numTickers * numDays * Double.BYTES).asDoubleBuffer();
+
+        return new Snapshot(fingerprint, days, Collections.unmodifiableList(dates), columns, closes);
+    }
+
+    // Reads the version, calendar and prices in one repeatable-read
+    // transaction so the fingerprint matches the data, then writes the file
+    // next to the old one and renames it into place; readers of the old
+    // mapping are unaffected.
+    private void writeFromDatabase(Fingerprint expected) throws SQLException, IOException {
+        Fingerprint fingerprint;
+        int[] days;
+        List<String> tickers = new ArrayList<>();
+        List<double[]> closes = new ArrayList<>();
+
+        try (Connection conn = rebuildSource(expected)) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+
+            try (Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery(VERSION_QUERY)) {
+                    fingerprint = fingerprint(rs);
+                }
+
+                List<Integer> calendar = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT date FROM trading_calendar ORDER BY date")) {
+                    while (rs.next()) {
+                        calendar.add((int) rs.getDate(1).toLocalDate().toEpochDay());
+                    }
+                }
+                days = calendar.stream().mapToInt(Integer::intValue).toArray();
+
+                stmt.setFetchSize(10_000);
+                try (ResultSet rs = stmt.executeQuery("SELECT ticker, date, close FROM historical_prices ORDER BY ticker, date")) {
+                    String ticker = null;
+                    double[] column = null;
+                    while (rs.next()) {
+                        String t = rs.getString(1);
+                        if (!t.equals(ticker)) {
+                            ticker = t;
+                            column = new double[days.length];
+                            Arrays.fill(column, Double.NaN);
+                            tickers.add(t);
+                            closes.add(column);
+                        }
+                        int d = Arrays.binarySearch(days, (int) rs.getDate(2).toLocalDate().toEpochDay());
+                        if (d >= 0) {
+                            column[d] = rs.getDouble(3);
+                        }
+                    }
+                }
+            }
+            conn.commit();
+        }
+
+        write(fingerprint, days, tickers, closes);
+    }
+
+    // A read connection that has replayed at least the expected version,
+    // polling until REPLICA_WAIT_MS runs out, else the primary. Versions
+    // only grow, so a replica at or past it has every close it counts.
+    private Connection rebuildSource(Fingerprint expected) throws SQLException {
+        if (connectionRouter.hasReplicas()) {
+            long deadline = System.currentTimeMillis() + REPLICA_WAIT_MS;
+            while (true) {
+                Connection conn = connectionRouter.read(null);
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(VERSION_QUERY)) {
+                    if (fingerprint(rs).pricesVersion() >= expected.pricesVersion()) {
+                        return conn;
+                    }
+                } catch (SQLException e) {
+                    conn.close();
+                    throw e;
+                }
+                conn.close();
+
+                if (System.currentTimeMillis() >= deadline) {
+                    System.out.println("No replica has caught up with price version "
+                            + expected.pricesVersion() + ", rebuilding price snapshot from the primary");
+                    break;
+                }
+                try {
+                    Thread.sleep(REPLICA_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return connectionRouter.primary();
+    }
+
+    private void write(Fingerprint fingerprint, int[] days, List<String> tickers, List<double[]> closes) throws IOException {
+        byte[][] names = new byte[tickers.size()][];
+        int namesBytes = 0;
+        for (int t = 0; t < names.length; t++) {
+            names[t] = tickers.get(t).getBytes(StandardCharsets.UTF_8);
+            namesBytes += 2 + names[t].length;
+        }
+        int closesOffset = align8(HEADER_BYTES + days.length * 4 + namesBytes);
+        int size = closesOffset + names.length * days.length * Double.BYTES;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putLong(fingerprint.pricesVersion())
+                .putInt(names.length)
+                .putInt(days.length)
+                .putInt(closesOffset);
+        for (int day : days) {
+            buffer.putInt(day);
+        }
+        for (byte[] name : names) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        buffer.position(closesOffset);
+        for (double[] column : closes) {
+            for (double close : column) {
+                buffer.putDouble(close);
+            }
+        }
+        buffer.flip();
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int align8(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    private static int lowerBound(int[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,105 @@
+package pmr.engine.service;
+
+import java.util.Arrays;
+
+/**
+ * Multiset of doubles answering "how many are above / below x" in
+ * O(log n). Values live in one large sorted array plus a small sorted
+ * insert buffer of about sqrt(n) entries that is merged in when it fills,
+ * so an insert costs O(sqrt(n)) amortized and a lookup two binary
+ * searches. Not thread-safe.
+ */
+final class RankedValues {
+    private static final int MIN_BUFFER = 1024;
+
+    private double[] sorted;
+    private double[] buffer;
+    private int buffered;
+
+    /** Takes ownership of {@code values[0, count)}. */
+    RankedValues(double[] values, int count) {
+        sorted = count == values.length ? values : Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        buffer = new double[bufferCapacity(count)];
+    }
+
+    int size() {
+        return sorted.length + buffered;
+    }
+
+    void add(double value) {
+        int at = upperBound(buffer, buffered, value);
+        System.arraycopy(buffer, at, buffer, at + 1, buffered - at);
+        buffer[at] = value;
+        buffered++;
+
+        if (buffered == buffer.length) {
+            merge();
+        }
+    }
+
+    /** Number of values strictly greater than {@code value}. */
+    int countAbove(double value) {
+        return sorted.length - upperBound(sorted, sorted.length, value)
+                + buffered - upperBound(buffer, buffered, value);
+    }
+
+    /** Number of values strictly less than {@code value}. */
+    int countBelow(double value) {
+        return lowerBound(sorted, sorted.length, value) + lowerBound(buffer, buffered, value);
+    }
+
+    private void merge() {
+        double[] merged = new double[sorted.length + buffered];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted.length && j < buffered) {
+            merged[k++] = sorted[i] <= buffer[j] ? sorted[i++] : buffer[j++];
+        }
+        while (i < sorted.length) {
+            merged[k++] = sorted[i++];
+        }
+        while (j < buffered) {
+            merged[k++] = buffer[j++];
+        }
+
+        sorted = merged;
+        buffer = new double[bufferCapacity(merged.length)];
+        buffered = 0;
+    }
+
+    private static int bufferCapacity(int size) {
+        return Math.max(MIN_BUFFER, (int) Math.sqrt(size));
+    }
+
+    // First index in values[0, length) holding something >= value.
+    private static int lowerBound(double[] values, int length, double value) {
+        int lo = 0;
+        int hi = length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First index in values[0, length) holding something > value.
+    private static int upperBound(double[] values, int length, double value) {
+        int lo = 0;
+        int hi = length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -1,6 +1,9 @@
 package pmr.engine.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
+import pmr.engine.diagnostics.RepositoryQueryEvent;
 import pmr.engine.model.*;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -9,91 +12,138 @@ import java.sql.*;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class Repository {
-    private final String dbUrl;
-    private final String user;
-    private final String pass;
-
-    public Repository() {
-        this.dbUrl = System.getenv("DB_URL");
-        this.user = System.getenv("DB_USER");
-        this.pass = System.getenv("DB_PASS");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int ASSET_SUMMARY_SIZE = 5;
+    private static final int LEADERBOARD_PAGE_SIZE = 50;
+
+    private final ConnectionRouter connectionRouter;
+    private final PriceSnapshot priceSnapshot;
+    private final SingleFlight singleFlight;
+    private final InvalidationBus invalidationBus;
+    private final PortfolioRanks portfolioRanks;
+    private final GroupCommitter<NewPortfolio, Integer> groupCommit;
+
+    private record NewPortfolio(
+            String name,
+            long userId,
+            List<LocalDate> tradingDates,
+            double[] dailyValues,
+            double[] dailyReturns,
+            double cumulativeReturn,
+            double meanReturn,
+            double volatility,
+            double sharpeRatio,
+            double valueAtRisk,
+            List<Asset> assets
+    ) {
+    }
+
+    public Repository(
+            ConnectionRouter connectionRouter,
+            PriceSnapshot priceSnapshot,
+            SingleFlight singleFlight,
+            InvalidationBus invalidationBus,
+            PortfolioRanks portfolioRanks,
+            MeterRegistry registry
+    ) {
+        this.connectionRouter = connectionRouter;
+        this.priceSnapshot = priceSnapshot;
+        this.singleFlight = singleFlight;
+        this.invalidationBus = invalidationBus;
+        this.portfolioRanks = portfolioRanks;
+
+        // Off by default: each save commits on its own. When enabled,
+        // concurrent saves share one transaction and one commit.
+        this.groupCommit = "true".equalsIgnoreCase(System.getenv("PORTFOLIO_GROUP_COMMIT"))
+                ? new GroupCommitter<>(
+                        "savePortfolio",
+                        Integer.parseInt(System.getenv().getOrDefault("PORTFOLIO_GROUP_COMMIT_MAX_BATCH", "64")),
+                        Long.parseLong(System.getenv().getOrDefault("PORTFOLIO_GROUP_COMMIT_MAX_DELAY_MS", "5")),
+                        this::insertPortfolios,
+                        registry)
+                : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (groupCommit != null) {
+            groupCommit.stop();
+        }
     }
 
     public List<LocalDate> fetchTradingDates() {
+        return priceSnapshot.tradingDates()
+                .orElseGet(() -> singleFlight.execute("fetchTradingDates", List.of(), this::loadTradingDates));
+    }
+
+    private List<LocalDate> loadTradingDates() {
         List<LocalDate> tradingDays = new ArrayList<>();
-        String query = "SELECT DISTINCT date::date FROM historical_prices ORDER BY date::date ASC";
+        String query = "SELECT date FROM trading_calendar ORDER BY date ASC";
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchTradingDates");
+        try (Connection conn = connectionRouter.read(null);
              PreparedStatement stmt = conn.prepareStatement(query);
              ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 tradingDays.add(rs.getDate(1).toLocalDate());
             }
+            event.finish(tradingDays.size());
 
         } catch (SQLException e) {
             throw new RuntimeException("Database error in fetchTradingDates", e);
         }
 
-        return tradingDays;
+        return Collections.unmodifiableList(tradingDays);
     }
 
-    public Map<LocalDate, Map<String, Double>> fetchClosingPrices(List<String> tickers, List<LocalDate> dates) {
-        Map<LocalDate, Map<String, Double>> prices = new HashMap<>();
+    /**
+     * Streams the closes of {@code tickers} between the first and last of
+     * {@code dates} (which must be sorted) into {@code sink}, addressed by
+     * ticker index and day offset so the caller needs no lookups.
+     */
+    public void fetchClosingPrices(String[] tickers, List<LocalDate> dates, ClosingPriceSink sink) {
+        if (tickers.length == 0 || dates.isEmpty() || priceSnapshot.readClosingPrices(tickers, dates, sink)) {
+            return;
+        }
 
         String query = """
-            SELECT date::date, ticker, close
+            SELECT array_position(?, ticker) - 1 AS col, date - ? AS day_offset, close
             FROM historical_prices
-            WHERE ticker = ANY (?) AND date::date = ANY (?)
+            WHERE ticker = ANY (?) AND date BETWEEN ? AND ?
         """;
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+        Date first = Date.valueOf(dates.get(0));
+        Date last = Date.valueOf(dates.get(dates.size() - 1));
+
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchClosingPrices");
+        try (Connection conn = connectionRouter.read(null);
              PreparedStatement stmt = conn.prepareStatement(query)) {
 
-            Array sqlTickers = conn.createArrayOf("VARCHAR", tickers.toArray());
-            Array sqlDates = conn.createArrayOf("DATE", dates.toArray());
+            Array sqlTickers = conn.createArrayOf("VARCHAR", tickers);
 
             stmt.setArray(1, sqlTickers);
-            stmt.setArray(2, sqlDates);
+            stmt.setDate(2, first);
+            stmt.setArray(3, sqlTickers);
+            stmt.setDate(4, first);
+            stmt.setDate(5, last);
 
+            int rows = 0;
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    LocalDate date = rs.getDate("date").toLocalDate();
-                    String ticker = rs.getString("ticker");
-                    double close = rs.getDouble("close");
-
-                    prices.computeIfAbsent(date, d -> new HashMap<>()).put(ticker, close);
+                    sink.accept(rs.getInt(1), rs.getInt(2), rs.getDouble(3));
+                    rows++;
                 }
             }
+            event.finish(rows);
 
         } catch (SQLException e) {
             throw new RuntimeException("Database error in fetchClosingPrices", e);
         }
-
-        return prices;
-    }
-
-    public String[] fetchTickers() {
-        List<String> tickers = new ArrayList<>();
-
-        String query = "SELECT ticker FROM assets LIMIT 50";
-
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
-             PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                tickers.add(rs.getString("ticker"));
-            }
-
-        } catch (SQLException e) {
-            throw new RuntimeException("Database error in fetchTickers", e);
-        }
-
-        return tickers.toArray(new String[0]);
     }
 
     public int savePortfolio(
@@ -109,51 +159,97 @@ public class Repository {
             double valueAtRisk,
             List<Asset> assets
     ) {
+        NewPortfolio portfolio = new NewPortfolio(name, userId, tradingDates, dailyValues, dailyReturns,
+                cumulativeReturn, meanReturn, volatility, sharpeRatio, valueAtRisk, assets);
+
+        if (groupCommit != null) {
+            return groupCommit.submit(portfolio);
+        }
+        return insertPortfolios(List.of(portfolio)).get(0);
+    }
+
+    /**
+     * Inserts {@code portfolios} as one JDBC batch, updates user_stats and
+     * queues their PORTFOLIO_SAVED notifications, all in one transaction.
+     * Returns the generated ids in input order once committed.
+     */
+    private List<Integer> insertPortfolios(List<NewPortfolio> portfolios) {
         String query = """
             INSERT INTO portfolios (
                 name, user_id, trading_dates, daily_values, daily_returns,
                 cumulative_return, mean_return, volatility,
-                sharpe_ratio, value_at_risk, assets
-            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                sharpe_ratio, value_at_risk, assets,
+                start_date, end_date, num_assets, asset_summary, tickers
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
         """;
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("savePortfolio");
+        try (Connection conn = connectionRouter.primary();
          PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
 
-            Array sqlDates = conn.createArrayOf("DATE",
-                    tradingDates.stream().map(Date::valueOf).toArray());
-
-            Array sqlDailyValues = conn.createArrayOf("FLOAT8", toObjectArray(dailyValues));
-            Array sqlDailyReturns = conn.createArrayOf("FLOAT8", toObjectArray(dailyReturns));
-
-            ObjectMapper mapper = new ObjectMapper();
-            String jsonAssets = mapper.writeValueAsString(assets);
-
-            stmt.setString(1, name);
-            stmt.setLong(2, userId);
-            stmt.setArray(3, sqlDates);
-            stmt.setArray(4, sqlDailyValues);
-            stmt.setArray(5, sqlDailyReturns);
-            stmt.setDouble(6, cumulativeReturn);
-            stmt.setDouble(7, meanReturn);
-            stmt.setDouble(8, volatility);
-            stmt.setDouble(9, sharpeRatio);
-            stmt.setDouble(10, valueAtRisk);
-            stmt.setObject(11, jsonAssets, java.sql.Types.OTHER);
-
-            int affectedRows = stmt.executeUpdate();
+            conn.setAutoCommit(false);
+
+            for (NewPortfolio p : portfolios) {
+                List<LocalDate> tradingDates = p.tradingDates();
+
+                Array sqlDates = conn.createArrayOf("DATE",
+                        tradingDates.stream().map(Date::valueOf).toArray());
+
+                Array sqlDailyValues = conn.createArrayOf("FLOAT8", toObjectArray(p.dailyValues()));
+                Array sqlDailyReturns = conn.createArrayOf("FLOAT8", toObjectArray(p.dailyReturns()));
+
+                String jsonAssets = MAPPER.writeValueAsString(p.assets());
+
+                stmt.setString(1, p.name());
+                stmt.setLong(2, p.userId());
+                stmt.setArray(3, sqlDates);
+                stmt.setArray(4, sqlDailyValues);
+                stmt.setArray(5, sqlDailyReturns);
+                stmt.setDouble(6, p.cumulativeReturn());
+                stmt.setDouble(7, p.meanReturn());
+                stmt.setDouble(8, p.volatility());
+                stmt.setDouble(9, p.sharpeRatio());
+                stmt.setDouble(10, p.valueAtRisk());
+                stmt.setObject(11, jsonAssets, java.sql.Types.OTHER);
+                stmt.setDate(12, tradingDates.isEmpty() ? null : Date.valueOf(tradingDates.get(0)));
+                stmt.setDate(13, tradingDates.isEmpty() ? null : Date.valueOf(tradingDates.get(tradingDates.size() - 1)));
+                stmt.setInt(14, p.assets().size());
+                stmt.setString(15, assetSummary(p.assets()));
+                stmt.setArray(16, conn.createArrayOf("TEXT", holdingTickers(p.assets())));
+                stmt.addBatch();
+            }
 
-            if (affectedRows == 0) {
-                throw new SQLException("Creating portfolio failed, no rows affected.");
+            int[] affectedRows = stmt.executeBatch();
+            for (int rows : affectedRows) {
+                if (rows == 0) {
+                    throw new SQLException("Creating portfolio failed, no rows affected.");
+                }
             }
 
+            List<Integer> ids = new ArrayList<>(portfolios.size());
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
-                } else {
-                    throw new SQLException("Creating portfolio failed, no ID obtained.");
+                while (generatedKeys.next()) {
+                    ids.add(generatedKeys.getInt(1));
                 }
             }
+            if (ids.size() != portfolios.size()) {
+                throw new SQLException("Creating portfolio failed, no ID obtained.");
+            }
+
+            updateUserStats(conn, portfolios);
+            for (int i = 0; i < portfolios.size(); i++) {
+                invalidationBus.publish(conn, new InvalidationEvent(
+                        InvalidationEvent.Type.PORTFOLIO_SAVED, Integer.toString(ids.get(i)), portfolios.get(i).userId()));
+            }
+            conn.commit();
+            event.finish(ids.size());
+
+            for (int i = 0; i < portfolios.size(); i++) {
+                NewPortfolio p = portfolios.get(i);
+                connectionRouter.markWritten(p.userId());
+                portfolioRanks.add(ids.get(i), p.sharpeRatio(), p.valueAtRisk());
+            }
+            return ids;
 
         } catch (Exception e) {
             throw new RuntimeException("Database error in savePortfolio", e);
@@ -161,6 +257,24 @@ public class Repository {
     }
 
     public PortfolioAnalysisResult fetchPortfolio(int id) {
+        return singleFlight.execute("fetchPortfolio", List.of(id), () -> loadPortfolio(id));
+    }
+
+    // Saved portfolios never change, so the only way a replica can be stale
+    // is by not having the row yet; that case is retried on the primary.
+    private PortfolioAnalysisResult loadPortfolio(int id) {
+        PortfolioAnalysisResult result = queryPortfolio(id, false);
+        if (result == null && connectionRouter.hasReplicas()) {
+            result = queryPortfolio(id, true);
+        }
+        if (result == null) {
+            throw new RuntimeException("Database error in fetchPortfolio",
+                    new RuntimeException("Portfolio with ID " + id + " not found"));
+        }
+        return result;
+    }
+
+    private PortfolioAnalysisResult queryPortfolio(int id, boolean fromPrimary) {
         String query = """
             SELECT p.name, p.user_id, p.trading_dates, p.daily_values, p.daily_returns,
                    p.cumulative_return, p.mean_return, p.volatility,
@@ -170,7 +284,8 @@ public class Repository {
             WHERE p.id = ?
         """;
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchPortfolio");
+        try (Connection conn = fromPrimary ? connectionRouter.primary() : connectionRouter.read(null);
              PreparedStatement stmt = conn.prepareStatement(query)) {
 
             stmt.setInt(1, id);
@@ -199,8 +314,7 @@ public class Repository {
                 double var = rs.getDouble("value_at_risk");
 
                 String jsonAssets = rs.getString("assets");
-                ObjectMapper mapper = new ObjectMapper();
-                Asset[] assets = mapper.readValue(jsonAssets, Asset[].class);
+                Asset[] assets = MAPPER.readValue(jsonAssets, Asset[].class);
 
                 PortfolioAnalysisResult result = new PortfolioAnalysisResult(
                         name,
@@ -217,9 +331,11 @@ public class Repository {
                         assets
                 );
 
+                event.finish(1);
                 return result;
             } else {
-                throw new RuntimeException("Portfolio with ID " + id + " not found");
+                event.finish(0);
+                return null;
             }
 
         } catch (Exception e) {
@@ -227,138 +343,432 @@ public class Repository {
         }
     }
 
-    public PortfolioLeaderboardEntry[] fetchLeaderboardEntries() {
+    public Page<PortfolioLeaderboardEntry> fetchLeaderboardEntries(String cursor, Integer limit) {
+        return singleFlight.execute("fetchLeaderboardEntries", Arrays.asList(cursor, limit),
+                () -> loadLeaderboardEntries(cursor, limit));
+    }
+
+    private Page<PortfolioLeaderboardEntry> loadLeaderboardEntries(String cursor, Integer limit) {
+        PageCursor after = PageCursor.decode(cursor);
+        int pageSize = PageCursor.pageSize(limit, LEADERBOARD_PAGE_SIZE);
+
         String query = """
-            SELECT p.id, p.name, p.sharpe_ratio, p.trading_dates, u.username
+            SELECT p.id, p.name, p.sharpe_ratio, p.start_date, p.end_date, u.username
             FROM portfolios p
             JOIN users u ON p.user_id = u.id
-            ORDER BY sharpe_ratio DESC LIMIT 50
+            WHERE p.start_date IS NOT NULL
+        """ + (after == null ? "" : "AND (p.sharpe_ratio, p.id) < (?, ?)\n") + """
+            ORDER BY p.sharpe_ratio DESC, p.id DESC
+            LIMIT ?
         """;
 
         List<PortfolioLeaderboardEntry> leaderboard = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
-             PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchLeaderboardEntries");
+        try (Connection conn = connectionRouter.read(null);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
 
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String portfolioName = rs.getString("name");
-                double sharpeRatio = rs.getDouble("sharpe_ratio");
-                String username = rs.getString("username");
+            int index = 1;
+            if (after != null) {
+                stmt.setDouble(index++, after.doubleKey());
+                stmt.setInt(index++, after.id());
+            }
+            stmt.setInt(index, pageSize + 1);
 
-                Array sqlDates = rs.getArray("trading_dates");
-                LocalDate[] tradingDates = Arrays.stream((Object[]) sqlDates.getArray())
-                        .map(d -> ((Date) d).toLocalDate())
-                        .toArray(LocalDate[]::new);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    leaderboard.add(leaderboardEntry(rs));
+                }
+            }
+            event.finish(leaderboard.size());
 
-                if (tradingDates.length == 0) continue;
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in fetchLeaderboardEntries", e);
+        }
 
-                LocalDate startDate = tradingDates[0];
-                LocalDate endDate = tradingDates[tradingDates.length - 1];
+        return leaderboardPage(leaderboard, pageSize);
+    }
 
-                leaderboard.add(new PortfolioLeaderboardEntry(
-                        id,
-                        username,
-                        portfolioName,
-                        sharpeRatio,
-                        startDate,
-                        endDate
-                ));
+    /**
+     * Portfolios holding all of {@code tickers} ({@code matchAll}) or any of
+     * them, best Sharpe ratio first. Tickers must already be trimmed and
+     * upper-cased like portfolios.tickers. Served by the GIN index on
+     * portfolios.tickers; paging is keyset on (sharpe_ratio, id) like the
+     * leaderboard.
+     */
+    public Page<PortfolioLeaderboardEntry> searchByHoldings(
+            String[] tickers,
+            boolean matchAll,
+            String cursor,
+            Integer limit
+    ) {
+        PageCursor after = PageCursor.decode(cursor);
+        int pageSize = PageCursor.pageSize(limit, LEADERBOARD_PAGE_SIZE);
+        String query = """
+            SELECT p.id, p.name, p.sharpe_ratio, p.start_date, p.end_date, u.username
+            FROM portfolios p
+            JOIN users u ON p.user_id = u.id
+            WHERE p.start_date IS NOT NULL
+        """ + (matchAll ? "AND p.tickers @> ?\n" : "AND p.tickers && ?\n")
+            + (after == null ? "" : "AND (p.sharpe_ratio, p.id) < (?, ?)\n") + """
+            ORDER BY p.sharpe_ratio DESC, p.id DESC
+            LIMIT ?
+        """;
+
+        List<PortfolioLeaderboardEntry> matches = new ArrayList<>();
+
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("searchByHoldings");
+        try (Connection conn = connectionRouter.read(null);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            int index = 1;
+            stmt.setArray(index++, conn.createArrayOf("TEXT", tickers));
+            if (after != null) {
+                stmt.setDouble(index++, after.doubleKey());
+                stmt.setInt(index++, after.id());
+            }
+            stmt.setInt(index, pageSize + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    matches.add(leaderboardEntry(rs));
+                }
             }
+            event.finish(matches.size());
 
         } catch (SQLException e) {
-            throw new RuntimeException("Database error in fetchLeaderboardEntries", e);
+            throw new RuntimeException("Database error in searchByHoldings", e);
+        }
+
+        return leaderboardPage(matches, pageSize);
+    }
+
+    private static PortfolioLeaderboardEntry leaderboardEntry(ResultSet rs) throws SQLException {
+        return new PortfolioLeaderboardEntry(
+                rs.getInt("id"),
+                rs.getString("username"),
+                rs.getString("name"),
+                rs.getDouble("sharpe_ratio"),
+                rs.getDate("start_date").toLocalDate(),
+                rs.getDate("end_date").toLocalDate()
+        );
+    }
+
+    // Rows were fetched with LIMIT pageSize + 1; a full extra row means
+    // there is a next page, keyed on the last row kept.
+    private static Page<PortfolioLeaderboardEntry> leaderboardPage(List<PortfolioLeaderboardEntry> rows, int pageSize) {
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows.remove(pageSize);
+            PortfolioLeaderboardEntry last = rows.get(pageSize - 1);
+            nextCursor = new PageCursor(Double.toString(last.sharpe()), last.id()).encode();
         }
 
-        return leaderboard.toArray(new PortfolioLeaderboardEntry[0]);
+        return new Page<>(rows, nextCursor);
     }
 
-    public PortfolioSummary[] fetchUserPortfolios(long userId) {
+    public Page<PortfolioSummary> fetchUserPortfolios(long userId, String cursor, Integer limit) {
+        PageCursor after = PageCursor.decode(cursor);
+        int pageSize = PageCursor.pageSize(limit);
+
         String query = """
-            SELECT id, name, assets, trading_dates, sharpe_ratio, value_at_risk
+            SELECT id, name, asset_summary, num_assets, start_date, end_date,
+                   sharpe_ratio, value_at_risk, created_at
             FROM portfolios
             WHERE user_id = ?
-            ORDER BY created_at DESC
+              AND start_date IS NOT NULL
+        """ + (after == null ? "" : "AND (created_at, id) < (?, ?)\n") + """
+            ORDER BY created_at DESC, id DESC
+            LIMIT ?
         """;
 
         List<PortfolioSummary> results = new ArrayList<>();
+        List<Timestamp> createdAts = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchUserPortfolios");
+        try (Connection conn = connectionRouter.read(userId);
              PreparedStatement stmt = conn.prepareStatement(query)) {
 
-            stmt.setLong(1, userId);
+            int index = 1;
+            stmt.setLong(index++, userId);
+            if (after != null) {
+                stmt.setTimestamp(index++, Timestamp.from(after.instantKey()));
+                stmt.setInt(index++, after.id());
+            }
+            stmt.setInt(index, pageSize + 1);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int id = rs.getInt("id");
-                    String name = rs.getString("name");
+                    double sharpe = rs.getDouble("sharpe_ratio");
+                    double valueAtRisk = rs.getDouble("value_at_risk");
+                    results.add(new PortfolioSummary(
+                            rs.getString("name"),
+                            rs.getInt("id"),
+                            rs.getString("asset_summary"),
+                            rs.getInt("num_assets"),
+                            rs.getDate("start_date").toLocalDate(),
+                            rs.getDate("end_date").toLocalDate(),
+                            sharpe,
+                            valueAtRisk,
+                            portfolioRanks.sharpePercentile(sharpe),
+                            portfolioRanks.valueAtRiskPercentile(valueAtRisk)
+                    ));
+                    createdAts.add(rs.getTimestamp("created_at"));
+                }
+            }
+            event.finish(results.size());
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in fetchUserPortfolios", e);
+        }
+
+        String nextCursor = null;
+        if (results.size() > pageSize) {
+            results.remove(pageSize);
+            PortfolioSummary last = results.get(pageSize - 1);
+            nextCursor = new PageCursor(createdAts.get(pageSize - 1).toInstant().toString(), last.id()).encode();
+        }
+
+        return new Page<>(results, nextCursor);
+    }
+
+    /**
+     * Return series of a user's portfolios, most recent first, or, when
+     * {@code userId} is null, of the top of the leaderboard.
+     */
+    public List<ReturnSeries> fetchReturnSeries(Long userId, int limit) {
+        String query = """
+            SELECT id, name, trading_dates, daily_returns
+            FROM portfolios
+            WHERE start_date IS NOT NULL
+        """ + (userId != null
+                ? "AND user_id = ?\nORDER BY created_at DESC, id DESC\n"
+                : "ORDER BY sharpe_ratio DESC, id DESC\n") + """
+            LIMIT ?
+        """;
+
+        List<ReturnSeries> series = new ArrayList<>();
 
-                    String jsonAssets = rs.getString("assets");
-                    ObjectMapper mapper = new ObjectMapper();
-                    Asset[] assets = mapper.readValue(jsonAssets, Asset[].class);
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchReturnSeries");
+        try (Connection conn = connectionRouter.read(userId);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            int index = 1;
+            if (userId != null) {
+                stmt.setLong(index++, userId);
+            }
+            stmt.setInt(index, limit);
 
-                    Array dateArray = rs.getArray("trading_dates");
-                    LocalDate[] tradingDates = Arrays.stream((Date[]) dateArray.getArray())
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate[] tradingDates = Arrays.stream((Date[]) rs.getArray("trading_dates").getArray())
                             .map(Date::toLocalDate)
                             .toArray(LocalDate[]::new);
+                    Double[] returnsBoxed = (Double[]) rs.getArray("daily_returns").getArray();
+                    double[] dailyReturns = Arrays.stream(returnsBoxed).mapToDouble(Double::doubleValue).toArray();
 
-                    if (tradingDates.length == 0) continue;
+                    series.add(new ReturnSeries(rs.getInt("id"), rs.getString("name"), tradingDates, dailyReturns));
+                }
+            }
+            event.finish(series.size());
 
-                    LocalDate startDate = tradingDates[0];
-                    LocalDate endDate = tradingDates[tradingDates.length - 1];
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in fetchReturnSeries", e);
+        }
 
-                    double sharpe = rs.getDouble("sharpe_ratio");
-                    double valueAtRisk = rs.getDouble("value_at_risk");
+        return series;
+    }
 
-                    PortfolioSummary result = new PortfolioSummary(
-                            name,
-                            id,
-                            assets,
-                            startDate,
-                            endDate,
-                            sharpe,
-                            valueAtRisk
-                    );
+    /**
+     * Daily simple returns of {@code tickers} on {@code dates} (which must be
+     * sorted), ticker-major: the return of ticker t on dates.get(d) is at
+     * [t][d]. Days without a stored return are NaN.
+     */
+    public double[][] fetchTickerReturns(String[] tickers, List<LocalDate> dates) {
+        double[][] returns = new double[tickers.length][dates.size()];
+        for (double[] row : returns) {
+            Arrays.fill(row, Double.NaN);
+        }
+        if (tickers.length == 0 || dates.isEmpty()) {
+            return returns;
+        }
 
-                    results.add(result);
+        String query = """
+            SELECT array_position(?, ticker) - 1 AS col, date, simple_return
+            FROM ticker_returns
+            WHERE ticker = ANY (?) AND date BETWEEN ? AND ?
+        """;
+
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchTickerReturns");
+        try (Connection conn = connectionRouter.read(null);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            Array sqlTickers = conn.createArrayOf("VARCHAR", tickers);
+
+            stmt.setArray(1, sqlTickers);
+            stmt.setArray(2, sqlTickers);
+            stmt.setDate(3, Date.valueOf(dates.get(0)));
+            stmt.setDate(4, Date.valueOf(dates.get(dates.size() - 1)));
+
+            int rows = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int day = Collections.binarySearch(dates, rs.getDate(2).toLocalDate());
+                    if (day >= 0) {
+                        returns[rs.getInt(1)][day] = rs.getDouble(3);
+                        rows++;
+                    }
                 }
             }
+            event.finish(rows);
 
-        } catch (Exception e) {
-            throw new RuntimeException("Database error in fetchUserPortfolios", e);
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in fetchTickerReturns", e);
         }
 
-        return results.toArray(new PortfolioSummary[0]);
+        return returns;
+    }
+
+    public List<TickerStats> fetchTickerStats(String[] tickers) {
+        String query = """
+            SELECT s.ticker, s.num_returns, s.first_date, s.last_date,
+                   s.mean_return, s.volatility, s.mean_log_return, r.volatility_20d
+            FROM ticker_stats s
+            LEFT JOIN ticker_returns r ON r.ticker = s.ticker AND r.date = s.last_date
+            WHERE s.ticker = ANY (?)
+            ORDER BY s.ticker
+        """;
+
+        List<TickerStats> stats = new ArrayList<>();
+
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchTickerStats");
+        try (Connection conn = connectionRouter.read(null);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setArray(1, conn.createArrayOf("VARCHAR", tickers));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Date firstDate = rs.getDate("first_date");
+                    Date lastDate = rs.getDate("last_date");
+                    stats.add(new TickerStats(
+                            rs.getString("ticker"),
+                            rs.getInt("num_returns"),
+                            firstDate != null ? firstDate.toLocalDate() : null,
+                            lastDate != null ? lastDate.toLocalDate() : null,
+                            rs.getObject("mean_return", Double.class),
+                            rs.getObject("volatility", Double.class),
+                            rs.getObject("mean_log_return", Double.class),
+                            rs.getObject("volatility_20d", Double.class)
+                    ));
+                }
+            }
+            event.finish(stats.size());
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in fetchTickerStats", e);
+        }
+
+        return stats;
     }
 
     public AccountData fetchAccountData(long userId) {
         String query = """
-            SELECT COUNT(*) AS count, COALESCE(MAX(sharpe_ratio), 0) AS best_sharpe
-            FROM portfolios
-            WHERE user_id = ?
+            SELECT s.num_portfolios, s.best_sharpe, s.sharpe_sum, s.best_value_at_risk, s.last_analysis_at
+            FROM user_stats s
+            WHERE s.user_id = ?
         """;
 
-        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass);
+        RepositoryQueryEvent event = RepositoryQueryEvent.begin("fetchAccountData");
+        try (Connection conn = connectionRouter.read(userId);
              PreparedStatement stmt = conn.prepareStatement(query)) {
 
             stmt.setLong(1, userId);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    int count = rs.getInt("count");
+                    event.finish(1);
+                    int count = rs.getInt("num_portfolios");
                     double bestSharpe = rs.getDouble("best_sharpe");
-                    return new AccountData(count, bestSharpe);
+                    double bestValueAtRisk = rs.getDouble("best_value_at_risk");
+                    return new AccountData(
+                            count,
+                            bestSharpe,
+                            rs.getDouble("sharpe_sum") / count,
+                            bestValueAtRisk,
+                            rs.getTimestamp("last_analysis_at").toInstant(),
+                            portfolioRanks.sharpeRank(bestSharpe),
+                            portfolioRanks.sharpePercentile(bestSharpe),
+                            portfolioRanks.valueAtRiskPercentile(bestValueAtRisk)
+                    );
                 } else {
-                    return new AccountData(0, 0.0);
+                    event.finish(0);
+                    return new AccountData(0, 0.0, 0.0, 0.0, null, 0, null, null);
                 }
             }
 
         } catch (SQLException e) {
-            throw new RuntimeException("Database error in fetchUserPortfolioStats", e);
+            throw new RuntimeException("Database error in fetchAccountData", e);
+        }
+    }
+
+    // One upsert per user, in user id order so concurrent batches lock
+    // user_stats rows in the same order.
+    private void updateUserStats(Connection conn, List<NewPortfolio> portfolios) throws SQLException {
+        String query = """
+            INSERT INTO user_stats (user_id, num_portfolios, best_sharpe, sharpe_sum, best_value_at_risk, last_analysis_at)
+            VALUES (?, ?, ?, ?, ?, now())
+            ON CONFLICT (user_id) DO UPDATE SET
+                num_portfolios = user_stats.num_portfolios + EXCLUDED.num_portfolios,
+                best_sharpe = GREATEST(user_stats.best_sharpe, EXCLUDED.best_sharpe),
+                sharpe_sum = user_stats.sharpe_sum + EXCLUDED.sharpe_sum,
+                best_value_at_risk = LEAST(user_stats.best_value_at_risk, EXCLUDED.best_value_at_risk),
+                last_analysis_at = EXCLUDED.last_analysis_at
+        """;
+
+        Map<Long, List<NewPortfolio>> byUser = portfolios.stream()
+                .collect(Collectors.groupingBy(NewPortfolio::userId, TreeMap::new, Collectors.toList()));
+
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            for (Map.Entry<Long, List<NewPortfolio>> entry : byUser.entrySet()) {
+                List<NewPortfolio> saved = entry.getValue();
+                double bestSharpe = Double.NEGATIVE_INFINITY;
+                double sharpeSum = 0.0;
+                double bestValueAtRisk = Double.POSITIVE_INFINITY;
+                for (NewPortfolio p : saved) {
+                    bestSharpe = Math.max(bestSharpe, p.sharpeRatio());
+                    sharpeSum += p.sharpeRatio();
+                    bestValueAtRisk = Math.min(bestValueAtRisk, p.valueAtRisk());
+                }
+
+                stmt.setLong(1, entry.getKey());
+                stmt.setInt(2, saved.size());
+                stmt.setDouble(3, bestSharpe);
+                stmt.setDouble(4, sharpeSum);
+                stmt.setDouble(5, bestValueAtRisk);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
         }
     }
 
+    private static String assetSummary(List<Asset> assets) {
+        return assets.stream()
+                .sorted(Comparator.comparingDouble(Asset::weight).reversed().thenComparing(Asset::ticker))
+                .limit(ASSET_SUMMARY_SIZE)
+                .map(Asset::ticker)
+                .collect(Collectors.joining(", "));
+    }
+
+    // Same normalization as the V10 backfill: distinct, upper-cased, sorted.
+    private static String[] holdingTickers(List<Asset> assets) {
+        return assets.stream()
+                .map(asset -> asset.ticker().toUpperCase(Locale.ROOT))
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+    }
+
     private static Double[] toObjectArray(double[] input) {
         Double[] output = new Double[input.length];
         for (int i = 0; i < input.length; i++) {
@@ -0,0 +1,10 @@
+package pmr.engine.service;
+
+import java.time.LocalDate;
+
+/**
+ * Stored daily returns of one portfolio; {@code dailyReturns[k]} is the
+ * return on {@code tradingDates[k + 1]}.
+ */
+public record ReturnSeries(int id, String name, LocalDate[] tradingDates, double[] dailyReturns) {
+}
@@ -0,0 +1,77 @@
+package pmr.engine.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical reads into one call. The first caller for a
+ * key runs the loader; callers arriving while it is in flight wait for and
+ * share its result. Nothing is kept once the call completes, so results are
+ * never staler than a direct read.
+ */
+@Component
+public class SingleFlight {
+    private final MeterRegistry registry;
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> executions = new ConcurrentHashMap<>();
+    private final Map<String, Counter> collapsed = new ConcurrentHashMap<>();
+
+    public SingleFlight(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, List<?> args, Supplier<T> loader) {
+        Key key = new Key(operation, args);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            counter(collapsed, "repository.singleflight.collapsed", operation).increment();
+            return (T) join(existing);
+        }
+
+        counter(executions, "repository.singleflight.executions", operation).increment();
+        try {
+            T result = loader.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for in-flight query", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String name, String operation) {
+        return counters.computeIfAbsent(operation, op -> Counter.builder(name)
+                .tag("operation", op)
+                .register(registry));
+    }
+
+    private record Key(String operation, List<?> args) {
+    }
+}
@@ -0,0 +1,184 @@
+package pmr.engine.service;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pmr.engine.model.Page;
+import pmr.engine.model.TickerInfo;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * In-memory copy of the assets table: tickers in a sorted array for prefix
+ * search and membership checks, with the remaining columns as metadata.
+ * Reloaded on ASSETS_CHANGED events; the assets version in table_versions is
+ * also polled as a slow fallback.
+ */
+@Service
+public class TickerUniverse {
+    private final String dbUrl;
+    private final String user;
+    private final String pass;
+
+    private volatile Index index;
+
+    public TickerUniverse(InvalidationBus invalidationBus) {
+        this.dbUrl = System.getenv("DB_URL");
+        this.user = System.getenv("DB_USER");
+        this.pass = System.getenv("DB_PASS");
+
+        invalidationBus.subscribe(EnumSet.of(InvalidationEvent.Type.ASSETS_CHANGED), new InvalidationBus.Subscriber() {
+            @Override
+            public void onEvent(InvalidationEvent event) {
+                load();
+            }
+
+            @Override
+            public void onResync() {
+                refreshIfChanged();
+            }
+        });
+    }
+
+    public List<String> all() {
+        return List.of(index().tickers());
+    }
+
+    /**
+     * Exact match against the upper-cased universe. Callers normalize first,
+     * so a ticker that passes here also matches historical_prices.
+     */
+    public boolean contains(String ticker) {
+        return ticker != null && Arrays.binarySearch(index().tickers(), ticker) >= 0;
+    }
+
+    public Page<TickerInfo> search(String prefix, String cursor, Integer limit) {
+        Index current = index();
+        String[] tickers = current.tickers();
+        String normalized = prefix == null ? "" : prefix.trim().toUpperCase(Locale.ROOT);
+        PageCursor after = PageCursor.decode(cursor);
+        int pageSize = PageCursor.pageSize(limit);
+
+        int start = lowerBound(tickers, after == null ? normalized : after.key());
+        if (after != null && start < tickers.length && tickers[start].equals(after.key())) {
+            start++;
+        }
+
+        List<TickerInfo> items = new ArrayList<>();
+        int i = start;
+        while (i < tickers.length && items.size() < pageSize && tickers[i].startsWith(normalized)) {
+            items.add(new TickerInfo(tickers[i], current.metadata()[i]));
+            i++;
+        }
+
+        String nextCursor = null;
+        if (i < tickers.length && tickers[i].startsWith(normalized) && !items.isEmpty()) {
+            nextCursor = new PageCursor(items.get(items.size() - 1).ticker(), 0).encode();
+        }
+
+        return new Page<>(items, nextCursor);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        index = loadIndex();
+        System.out.println("Loaded " + index.tickers().length + " tickers (assets version " + index.version() + ")");
+    }
+
+    @Scheduled(fixedDelayString = "${TICKER_REFRESH_MS:300000}", initialDelayString = "${TICKER_REFRESH_MS:300000}")
+    public void refreshIfChanged() {
+        Index current = index;
+        try {
+            if (current == null || fetchVersion() != current.version()) {
+                load();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ticker universe refresh failed: " + e.getMessage());
+        }
+    }
+
+    private Index index() {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                if (index == null) {
+                    index = loadIndex();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    private Index loadIndex() {
+        String query = "SELECT * FROM assets";
+
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass)) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+            long version = fetchVersion(conn);
+            TreeMap<String, Map<String, Object>> rows = new TreeMap<>();
+
+            try (PreparedStatement stmt = conn.prepareStatement(query);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                ResultSetMetaData columns = rs.getMetaData();
+                while (rs.next()) {
+                    Map<String, Object> attributes = new LinkedHashMap<>();
+                    for (int c = 1; c <= columns.getColumnCount(); c++) {
+                        String column = columns.getColumnName(c);
+                        if (!column.equals("ticker")) {
+                            attributes.put(column, rs.getObject(c));
+                        }
+                    }
+                    rows.put(rs.getString("ticker").toUpperCase(Locale.ROOT), Collections.unmodifiableMap(attributes));
+                }
+            }
+
+            conn.commit();
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object>[] metadata = rows.values().toArray(new Map[0]);
+            return new Index(rows.keySet().toArray(new String[0]), metadata, version);
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in TickerUniverse.loadIndex", e);
+        }
+    }
+
+    private long fetchVersion() {
+        try (Connection conn = DriverManager.getConnection(dbUrl, user, pass)) {
+            return fetchVersion(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error in TickerUniverse.fetchVersion", e);
+        }
+    }
+
+    private static long fetchVersion(Connection conn) throws SQLException {
+        String query = "SELECT version FROM table_versions WHERE table_name = 'assets'";
+        try (PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private record Index(String[] tickers, Map<String, Object>[] metadata, long version) {
+    }
+}
@@ -6,10 +6,17 @@ import pmr.engine.repository.UserRepository;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
+    private static final long CACHE_TTL_MILLIS = Long.parseLong(System.getenv().getOrDefault("USER_CACHE_TTL_MS", "60000"));
+    private static final int CACHE_MAX_ENTRIES = Integer.parseInt(System.getenv().getOrDefault("USER_CACHE_MAX", "10000"));
 
     private UserRepository userRepository;
+    private final Map<String, CachedUser> cache = new ConcurrentHashMap<>();
 
     public UserDetailsServiceImpl(UserRepository userRepository) {
         this.userRepository = userRepository;
@@ -17,9 +24,34 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        return findUser(username).orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
+
+    public Optional<CustomUserDetails> findUser(String username) {
+        long now = System.currentTimeMillis();
+        CachedUser cached = cache.get(username);
+        if (cached != null && cached.expiresAt() > now) {
+            return Optional.of(cached.details());
+        }
+
+        Optional<User> user = userRepository.findByUsername(username);
+        if (user.isEmpty()) {
+            cache.remove(username);
+            return Optional.empty();
+        }
+
+        CustomUserDetails details = new CustomUserDetails(user.get().getId(), user.get().getUsername(), user.get().getPassword());
+        if (cache.size() >= CACHE_MAX_ENTRIES) {
+            cache.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (cache.size() >= CACHE_MAX_ENTRIES) {
+                cache.clear();
+            }
+        }
+        cache.put(username, new CachedUser(details, now + CACHE_TTL_MILLIS));
+
+        return Optional.of(details);
+    }
 
-        return new CustomUserDetails(user.getId(), user.getUsername(), user.getPassword());
+    private record CachedUser(CustomUserDetails details, long expiresAt) {
     }
 }
@@ -0,0 +1,19 @@
+-- Distinct upper-cased tickers of each portfolio, sorted, so holdings
+-- search can use array containment (@> for all of, && for any of) against
+-- a GIN index instead of parsing assets for every row.
+ALTER TABLE portfolios
+    ADD COLUMN IF NOT EXISTS tickers TEXT[];
+
+UPDATE portfolios p
+SET tickers = s.tickers
+FROM (
+    SELECT id,
+           ARRAY(SELECT DISTINCT upper(a ->> 'ticker')
+                 FROM jsonb_array_elements(assets::jsonb) a
+                 ORDER BY 1) AS tickers
+    FROM portfolios
+) s
+WHERE p.id = s.id AND p.tickers IS NULL;
+
+CREATE INDEX IF NOT EXISTS portfolios_tickers_idx
+    ON portfolios USING GIN (tickers);
@@ -0,0 +1,24 @@
+-- Status of every ingestion run, written by the node that runs it so any
+-- node can report it and it survives restarts.
+CREATE TABLE IF NOT EXISTS ingestion_runs (
+    id            UUID PRIMARY KEY,
+    run_date      DATE NOT NULL,
+    trigger       TEXT NOT NULL,
+    state         TEXT NOT NULL CHECK (state IN ('QUEUED', 'RUNNING', 'SUCCEEDED', 'SKIPPED', 'FAILED')),
+    message       TEXT,
+    total_tickers INTEGER NOT NULL DEFAULT 0,
+    queued_at     TIMESTAMPTZ NOT NULL,
+    started_at    TIMESTAMPTZ,
+    finished_at   TIMESTAMPTZ
+);
+
+CREATE INDEX IF NOT EXISTS ingestion_runs_queued_idx ON ingestion_runs (queued_at DESC);
+
+-- The run that last attempted each ticker, and when that attempt started
+-- and finished; finished_at is null while it is in flight.
+ALTER TABLE ingestion_progress
+    ADD COLUMN IF NOT EXISTS run_id      UUID,
+    ADD COLUMN IF NOT EXISTS started_at  TIMESTAMPTZ,
+    ADD COLUMN IF NOT EXISTS finished_at TIMESTAMPTZ;
+
+CREATE INDEX IF NOT EXISTS ingestion_progress_run_idx ON ingestion_progress (run_id);
@@ -0,0 +1,6 @@
+-- Version of historical_prices (and of trading_calendar, which only changes
+-- with it), bumped by ingestion in the same transaction as the closes it
+-- writes. Bumped explicitly rather than by the bump_table_version trigger,
+-- which would also announce every ticker's write on pmr_events.
+INSERT INTO table_versions (table_name, version) VALUES ('historical_prices', 1)
+ON CONFLICT (table_name) DO NOTHING;
@@ -0,0 +1,39 @@
+-- Bump the historical_prices version from triggers rather than from
+-- ingestion code, so any write (ingestion, an ops backfill, a manual fix)
+-- invalidates price snapshots. Unlike bump_table_version these do not
+-- notify pmr_events: ingestion writes once per ticker and announces the
+-- whole run with MARKET_DATA_UPDATED instead.
+CREATE OR REPLACE FUNCTION bump_table_version_quiet() RETURNS trigger AS $$
+BEGIN
+    UPDATE table_versions SET version = version + 1 WHERE table_name = TG_TABLE_NAME;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- For INSERT and DELETE: skip statements that touched no rows, such as an
+-- ingestion insert whose closes were all already stored.
+CREATE OR REPLACE FUNCTION bump_table_version_if_changed() RETURNS trigger AS $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM changed) THEN
+        UPDATE table_versions SET version = version + 1 WHERE table_name = TG_TABLE_NAME;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS historical_prices_version_insert ON historical_prices;
+CREATE TRIGGER historical_prices_version_insert
+    AFTER INSERT ON historical_prices
+    REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+
+DROP TRIGGER IF EXISTS historical_prices_version_delete ON historical_prices;
+CREATE TRIGGER historical_prices_version_delete
+    AFTER DELETE ON historical_prices
+    REFERENCING OLD TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_if_changed();
+
+DROP TRIGGER IF EXISTS historical_prices_version_update ON historical_prices;
+CREATE TRIGGER historical_prices_version_update
+    AFTER UPDATE OR TRUNCATE ON historical_prices
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version_quiet();
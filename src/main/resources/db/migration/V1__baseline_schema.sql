@@ -0,0 +1,37 @@
+-- Tables that existed before migrations were introduced. Every statement is a
+-- no-op against the production database; it lets a fresh database start from
+-- the same shape.
+
+CREATE TABLE IF NOT EXISTS users (
+    id       BIGSERIAL PRIMARY KEY,
+    username VARCHAR(255) UNIQUE,
+    password VARCHAR(255),
+    role     VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS assets (
+    ticker VARCHAR(16) PRIMARY KEY
+);
+
+CREATE TABLE IF NOT EXISTS historical_prices (
+    ticker VARCHAR(16) NOT NULL,
+    date   DATE NOT NULL,
+    close  DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (ticker, date)
+);
+
+CREATE TABLE IF NOT EXISTS portfolios (
+    id                SERIAL PRIMARY KEY,
+    name              TEXT NOT NULL,
+    user_id           BIGINT NOT NULL REFERENCES users (id),
+    trading_dates     DATE[] NOT NULL,
+    daily_values      DOUBLE PRECISION[] NOT NULL,
+    daily_returns     DOUBLE PRECISION[] NOT NULL,
+    cumulative_return DOUBLE PRECISION NOT NULL,
+    mean_return       DOUBLE PRECISION NOT NULL,
+    volatility        DOUBLE PRECISION NOT NULL,
+    sharpe_ratio      DOUBLE PRECISION NOT NULL,
+    value_at_risk     DOUBLE PRECISION NOT NULL,
+    assets            JSONB NOT NULL,
+    created_at        TIMESTAMPTZ NOT NULL DEFAULT now()
+);
@@ -0,0 +1,30 @@
+-- historical_prices.date is compared without casts from here on, so make sure
+-- the column really is a DATE.
+DO $$
+BEGIN
+    IF EXISTS (
+        SELECT 1 FROM information_schema.columns
+        WHERE table_name = 'historical_prices' AND column_name = 'date' AND data_type <> 'date'
+    ) THEN
+        ALTER TABLE historical_prices ALTER COLUMN date TYPE DATE USING date::date;
+    END IF;
+END $$;
+
+-- Covering index: price lookups by (ticker, date range) are answered from the
+-- index alone.
+CREATE INDEX IF NOT EXISTS historical_prices_ticker_date_idx
+    ON historical_prices (ticker, date) INCLUDE (close);
+
+-- One row per date that has at least one stored close. ticker_count is kept
+-- in step with historical_prices by ingestion so a date disappears once its
+-- last price is pruned.
+CREATE TABLE IF NOT EXISTS trading_calendar (
+    date         DATE PRIMARY KEY,
+    ticker_count INTEGER NOT NULL CHECK (ticker_count >= 0)
+);
+
+INSERT INTO trading_calendar (date, ticker_count)
+SELECT date, COUNT(*)
+FROM historical_prices
+GROUP BY date
+ON CONFLICT (date) DO UPDATE SET ticker_count = EXCLUDED.ticker_count;
@@ -0,0 +1,33 @@
+-- Columns read by the portfolio list and leaderboard instead of decoding
+-- trading_dates and parsing assets for every row.
+ALTER TABLE portfolios
+    ADD COLUMN IF NOT EXISTS start_date    DATE,
+    ADD COLUMN IF NOT EXISTS end_date      DATE,
+    ADD COLUMN IF NOT EXISTS num_assets    INTEGER,
+    ADD COLUMN IF NOT EXISTS asset_summary TEXT;
+
+UPDATE portfolios p
+SET start_date    = p.trading_dates[array_lower(p.trading_dates, 1)],
+    end_date      = p.trading_dates[array_upper(p.trading_dates, 1)],
+    num_assets    = s.num_assets,
+    asset_summary = s.asset_summary
+FROM (
+    SELECT id,
+           jsonb_array_length(assets::jsonb) AS num_assets,
+           (SELECT string_agg(ticker, ', ' ORDER BY weight DESC, ticker)
+            FROM (SELECT a ->> 'ticker' AS ticker, (a ->> 'weight')::float8 AS weight
+                  FROM jsonb_array_elements(assets::jsonb) a
+                  ORDER BY weight DESC, ticker
+                  LIMIT 5) top) AS asset_summary
+    FROM portfolios
+) s
+WHERE p.id = s.id AND p.start_date IS NULL;
+
+-- Keyset pagination: userPortfolios walks (created_at, id) newest first, the
+-- leaderboard walks (sharpe_ratio, id) best first. Both are backward
+-- scans of these indexes.
+CREATE INDEX IF NOT EXISTS portfolios_user_created_idx
+    ON portfolios (user_id, created_at, id);
+
+CREATE INDEX IF NOT EXISTS portfolios_sharpe_idx
+    ON portfolios (sharpe_ratio, id);
@@ -0,0 +1,16 @@
+-- Per-user aggregates kept in step with portfolios by Repository.savePortfolio
+-- in the same transaction as the insert.
+CREATE TABLE IF NOT EXISTS user_stats (
+    user_id            BIGINT PRIMARY KEY REFERENCES users (id),
+    num_portfolios     INTEGER NOT NULL,
+    best_sharpe        DOUBLE PRECISION NOT NULL,
+    sharpe_sum         DOUBLE PRECISION NOT NULL,
+    best_value_at_risk DOUBLE PRECISION NOT NULL,
+    last_analysis_at   TIMESTAMPTZ NOT NULL
+);
+
+INSERT INTO user_stats (user_id, num_portfolios, best_sharpe, sharpe_sum, best_value_at_risk, last_analysis_at)
+SELECT user_id, COUNT(*), MAX(sharpe_ratio), SUM(sharpe_ratio), MIN(value_at_risk), MAX(created_at)
+FROM portfolios
+GROUP BY user_id
+ON CONFLICT (user_id) DO NOTHING;
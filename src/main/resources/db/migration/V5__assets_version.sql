@@ -0,0 +1,21 @@
+-- Change counter per table, bumped by statement-level triggers. In-memory
+-- copies of a table poll their row here to know when to reload.
+CREATE TABLE IF NOT EXISTS table_versions (
+    table_name TEXT PRIMARY KEY,
+    version    BIGINT NOT NULL
+);
+
+INSERT INTO table_versions (table_name, version) VALUES ('assets', 1)
+ON CONFLICT (table_name) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bump_table_version() RETURNS trigger AS $$
+BEGIN
+    UPDATE table_versions SET version = version + 1 WHERE table_name = TG_TABLE_NAME;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS assets_version ON assets;
+CREATE TRIGGER assets_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON assets
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version();
@@ -0,0 +1,25 @@
+-- Lease row for the node currently holding the ingestion advisory lock. The
+-- lock itself is what excludes other nodes; this row lets them see who holds
+-- it and whether that holder is still making progress.
+CREATE TABLE IF NOT EXISTS ingestion_lease (
+    id           INTEGER PRIMARY KEY CHECK (id = 1),
+    holder       TEXT NOT NULL,
+    backend_pid  INTEGER NOT NULL,
+    run_date     DATE NOT NULL,
+    acquired_at  TIMESTAMPTZ NOT NULL,
+    heartbeat_at TIMESTAMPTZ NOT NULL
+);
+
+-- Per-ticker progress of each ingestion run so a node taking over resumes
+-- where the previous holder stopped.
+CREATE TABLE IF NOT EXISTS ingestion_progress (
+    run_date   DATE NOT NULL,
+    ticker     VARCHAR(16) NOT NULL,
+    status     TEXT NOT NULL CHECK (status IN ('pending', 'done', 'failed')),
+    attempts   INTEGER NOT NULL DEFAULT 0,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (run_date, ticker)
+);
+
+CREATE INDEX IF NOT EXISTS ingestion_progress_unfinished_idx
+    ON ingestion_progress (run_date) WHERE status <> 'done';
@@ -0,0 +1,12 @@
+-- Besides bumping its version, announce table changes on the pmr_events
+-- channel so every node's InvalidationBus hears about them immediately.
+CREATE OR REPLACE FUNCTION bump_table_version() RETURNS trigger AS $$
+BEGIN
+    UPDATE table_versions SET version = version + 1 WHERE table_name = TG_TABLE_NAME;
+    PERFORM pg_notify('pmr_events', json_build_object(
+        'type', upper(TG_TABLE_NAME) || '_CHANGED',
+        'key', TG_TABLE_NAME
+    )::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
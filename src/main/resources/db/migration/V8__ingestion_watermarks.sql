@@ -0,0 +1,9 @@
+-- Latest date per ticker for which the provider has returned data. Every day
+-- up to it has been asked for, so a day still missing at or before it is a
+-- day the provider has no bar for (a holiday or a halt) and is not asked for
+-- again. Tickers without a row are backfilled from gaps against
+-- trading_calendar.
+CREATE TABLE IF NOT EXISTS ingestion_watermarks (
+    ticker          VARCHAR(16) PRIMARY KEY,
+    checked_through DATE NOT NULL
+);
@@ -0,0 +1,46 @@
+-- Per-ticker daily returns derived from historical_prices, maintained by
+-- ingestion as closes land. A row exists for every stored close that has a
+-- stored previous close; returns span any gap between the two.
+-- volatility_20d is the sample standard deviation of the last 20 simple
+-- returns, NULL until 20 are available.
+CREATE TABLE IF NOT EXISTS ticker_returns (
+    ticker         VARCHAR(16) NOT NULL,
+    date           DATE NOT NULL,
+    simple_return  DOUBLE PRECISION NOT NULL,
+    log_return     DOUBLE PRECISION NOT NULL,
+    volatility_20d DOUBLE PRECISION,
+    PRIMARY KEY (ticker, date)
+);
+
+-- Summary of each ticker's stored returns, recomputed whenever they change.
+CREATE TABLE IF NOT EXISTS ticker_stats (
+    ticker          VARCHAR(16) PRIMARY KEY,
+    num_returns     INTEGER NOT NULL,
+    first_date      DATE,
+    last_date       DATE,
+    mean_return     DOUBLE PRECISION,
+    volatility      DOUBLE PRECISION,
+    mean_log_return DOUBLE PRECISION,
+    updated_at      TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+WITH priced AS (
+    SELECT ticker, date, close, LAG(close) OVER (PARTITION BY ticker ORDER BY date) AS prev
+    FROM historical_prices
+), returns AS (
+    SELECT ticker, date, close / prev - 1 AS simple_return, ln(close / prev) AS log_return
+    FROM priced
+    WHERE prev > 0 AND close > 0
+)
+INSERT INTO ticker_returns (ticker, date, simple_return, log_return, volatility_20d)
+SELECT ticker, date, simple_return, log_return,
+       CASE WHEN COUNT(*) OVER w = 20 THEN stddev_samp(simple_return) OVER w END
+FROM returns
+WINDOW w AS (PARTITION BY ticker ORDER BY date ROWS BETWEEN 19 PRECEDING AND CURRENT ROW)
+ON CONFLICT (ticker, date) DO NOTHING;
+
+INSERT INTO ticker_stats (ticker, num_returns, first_date, last_date, mean_return, volatility, mean_log_return)
+SELECT ticker, COUNT(*), MIN(date), MAX(date), AVG(simple_return), stddev_samp(simple_return), AVG(log_return)
+FROM ticker_returns
+GROUP BY ticker
+ON CONFLICT (ticker) DO NOTHING;
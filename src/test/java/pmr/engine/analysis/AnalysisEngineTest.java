@@ -0,0 +1,162 @@
+package pmr.engine.analysis;
+
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The fused kernel against the calculateDailyValues / calculateReturns /
+ * calculateMetrics path it replaced, on fixed data.
+ */
+class AnalysisEngineTest {
+    private static final int NUM_TRADING_DAYS = 252;
+    private static final double ANNUAL_RISK_FREE_RATE = 0.05;
+
+    private final AnalysisEngine engine = new AnalysisEngine();
+
+    @Test
+    void distinctTickersMatchTheOldPathExactly() {
+        double[][] closes = randomWalk(250, 8, 42);
+        String[] assetTickers = {"T0", "T1", "T2", "T3", "T4", "T5", "T6", "T7"};
+        double[] assetWeights = {3, 1.5, 10, 2, 7, 0.25, 4, 1};
+
+        Reference expected = reference(closes, columnsOf(assetTickers), assetWeights);
+        Result actual = fused(closes, assetTickers, assetWeights);
+
+        // Same products summed in the same order: bit-identical.
+        assertArrayEquals(expected.dailyValues, actual.dailyValues, 0.0);
+        assertArrayEquals(expected.dailyReturns, actual.dailyReturns, 0.0);
+        assertEquals(expected.cumulativeReturn, actual.metrics.cumulativeReturn(), 0.0);
+
+        // Single-pass mean and variance vs commons-math's two passes.
+        assertRelative(expected.meanReturn, actual.metrics.meanReturn());
+        assertRelative(expected.volatility, actual.metrics.volatility());
+        assertRelative(expected.sharpe, actual.metrics.sharpe());
+    }
+
+    @Test
+    void repeatedTickersMatchTheOldPath() {
+        double[][] closes = randomWalk(250, 3, 7);
+        String[] assetTickers = {"T0", "T1", "T0", "T2", "T1"};
+        double[] assetWeights = {2, 5, 1, 3, 0.5};
+
+        Reference expected = reference(closes, columnsOf(assetTickers), assetWeights);
+        Result actual = fused(closes, assetTickers, assetWeights);
+
+        for (int d = 0; d < expected.dailyValues.length; d++) {
+            assertRelative(expected.dailyValues[d], actual.dailyValues[d]);
+        }
+        assertRelative(expected.cumulativeReturn, actual.metrics.cumulativeReturn());
+        assertRelative(expected.meanReturn, actual.metrics.meanReturn());
+        assertRelative(expected.volatility, actual.metrics.volatility());
+        assertRelative(expected.sharpe, actual.metrics.sharpe());
+    }
+
+    private record Reference(
+            double[] dailyValues,
+            double[] dailyReturns,
+            double cumulativeReturn,
+            double meanReturn,
+            double volatility,
+            double sharpe
+    ) {
+    }
+
+    private record Result(double[] dailyValues, double[] dailyReturns, AnalysisEngine.Metrics metrics) {
+    }
+
+    // The pre-kernel PortfolioAnalyzer: one pass per asset per day, then
+    // returns, then commons-math statistics.
+    private static Reference reference(double[][] closes, int[] assetColumns, double[] assetWeights) {
+        int days = closes.length;
+        double[] dailyValues = new double[days];
+        for (int i = 0; i < days; i++) {
+            double weightedSum = 0.0;
+            for (int a = 0; a < assetColumns.length; a++) {
+                weightedSum += closes[i][assetColumns[a]] * assetWeights[a];
+            }
+            dailyValues[i] = weightedSum;
+        }
+
+        double[] dailyReturns = new double[days - 1];
+        for (int i = 1; i < days; i++) {
+            dailyReturns[i - 1] = (dailyValues[i] - dailyValues[i - 1]) / dailyValues[i - 1];
+        }
+
+        double cumulativeProduct = 1.0;
+        for (double dailyReturn : dailyReturns) {
+            cumulativeProduct *= (1 + dailyReturn);
+        }
+
+        double meanReturn = new Mean().evaluate(dailyReturns);
+        double volatility = new StandardDeviation().evaluate(dailyReturns);
+        double dailyRiskFreeRate = Math.pow(1 + ANNUAL_RISK_FREE_RATE, 1.0 / NUM_TRADING_DAYS) - 1;
+        double sharpe = (meanReturn - dailyRiskFreeRate) / volatility * Math.pow(NUM_TRADING_DAYS, 0.5);
+
+        return new Reference(dailyValues, dailyReturns, cumulativeProduct - 1, meanReturn, volatility, sharpe);
+    }
+
+    // The current PortfolioAnalyzer: tickers folded onto price-matrix
+    // columns, closes loaded through the sink, then one engine run.
+    private Result fused(double[][] closes, String[] assetTickers, double[] assetWeights) {
+        int days = closes.length;
+        int columns = closes[0].length;
+        List<LocalDate> dates = new ArrayList<>();
+        LocalDate first = LocalDate.of(2024, 1, 2);
+        for (int d = 0; d < days; d++) {
+            dates.add(first.plusDays(d));
+        }
+
+        int[] assetColumns = columnsOf(assetTickers);
+        double[] weights = new double[columns];
+        for (int a = 0; a < assetTickers.length; a++) {
+            weights[assetColumns[a]] += assetWeights[a];
+        }
+
+        AnalysisEngine.Scratch scratch = engine.scratch(dates, columns);
+        for (int d = 0; d < days; d++) {
+            for (int c = 0; c < columns; c++) {
+                scratch.accept(c, d, closes[d][c]);
+            }
+        }
+        scratch.fillGaps();
+
+        double[] dailyValues = new double[days];
+        double[] dailyReturns = new double[days - 1];
+        AnalysisEngine.Metrics metrics = engine.run(scratch, weights, dailyValues, dailyReturns);
+        return new Result(dailyValues, dailyReturns, metrics);
+    }
+
+    private static int[] columnsOf(String[] tickers) {
+        int[] columns = new int[tickers.length];
+        for (int a = 0; a < tickers.length; a++) {
+            columns[a] = Integer.parseInt(tickers[a].substring(1));
+        }
+        return columns;
+    }
+
+    private static double[][] randomWalk(int days, int tickers, long seed) {
+        Random random = new Random(seed);
+        double[][] closes = new double[days][tickers];
+        for (int c = 0; c < tickers; c++) {
+            double close = 20 + random.nextDouble() * 200;
+            for (int d = 0; d < days; d++) {
+                close *= Math.exp(random.nextGaussian() * 0.02);
+                closes[d][c] = close;
+            }
+        }
+        return closes;
+    }
+
+    private static void assertRelative(double expected, double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * 1e-12);
+    }
+}
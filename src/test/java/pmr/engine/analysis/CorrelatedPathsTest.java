@@ -0,0 +1,123 @@
+package pmr.engine.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The Cholesky factor against its definition, and simulated one-day
+ * shocks against the covariance they were drawn from.
+ */
+class CorrelatedPathsTest {
+    private static final int N = 3;
+    private static final double[] MEAN = {0.0005, 0.0002, -0.0001};
+    private static final double[] COVARIANCE = {
+            4.0e-4, 1.2e-4, -0.6e-4,
+            1.2e-4, 2.5e-4, 0.3e-4,
+            -0.6e-4, 0.3e-4, 1.0e-4,
+    };
+
+    @Test
+    void choleskyReproducesTheCovariance() {
+        double[] l = CorrelatedPaths.cholesky(COVARIANCE, N);
+        assertArrayEquals(COVARIANCE, lowerTimesTranspose(l, N), 1e-18);
+        for (int i = 0; i < N; i++) {
+            for (int j = i + 1; j < N; j++) {
+                assertEquals(0.0, l[i * N + j]);
+            }
+        }
+    }
+
+    @Test
+    void choleskyClampsADependentAsset() {
+        // Asset 2 is asset 0 plus asset 1, so the matrix is only semidefinite.
+        double a = 4.0e-4;
+        double b = 2.5e-4;
+        double c = 1.2e-4;
+        double[] covariance = {
+                a, c, a + c,
+                c, b, c + b,
+                a + c, c + b, a + b + 2 * c,
+        };
+        double[] l = CorrelatedPaths.cholesky(covariance, 3);
+        assertEquals(0.0, l[2 * 3 + 2]);
+        assertArrayEquals(covariance, lowerTimesTranspose(l, 3), 1e-15);
+    }
+
+    @Test
+    void oneDayShocksHaveTheInputMeanAndCovariance() {
+        double[] l = CorrelatedPaths.cholesky(COVARIANCE, N);
+        int paths = 200_000;
+
+        // A one-day value with exposure 1 on assets i and j is
+        // 2 + r_i + r_j, whose variance is S_ii + S_jj + 2 S_ij.
+        for (int i = 0; i < N; i++) {
+            for (int j = i; j < N; j++) {
+                double[] exposures = new double[N];
+                exposures[i] += 1;
+                exposures[j] += 1;
+                double[] last = new double[paths];
+                CorrelatedPaths.simulate(MEAN, l, exposures, 1, paths, 11, last, 0, new double[0]);
+
+                double sum = 0.0;
+                for (double v : last) {
+                    sum += v;
+                }
+                double mean = sum / paths;
+                double m2 = 0.0;
+                for (double v : last) {
+                    m2 += (v - mean) * (v - mean);
+                }
+                double variance = m2 / (paths - 1);
+
+                double expectedMean = (1 + MEAN[i]) * exposures[i] + (i == j ? 0 : (1 + MEAN[j]) * exposures[j]);
+                double expectedVariance = i == j
+                        ? 4 * COVARIANCE[i * N + i]
+                        : COVARIANCE[i * N + i] + COVARIANCE[j * N + j] + 2 * COVARIANCE[i * N + j];
+
+                // Antithetic pairs cancel the sampling error of the mean.
+                assertEquals(expectedMean, mean, 1e-12, "mean " + i + "," + j);
+                assertEquals(expectedVariance, variance, 0.02 * expectedVariance, "variance " + i + "," + j);
+            }
+        }
+    }
+
+    @Test
+    void sameSeedGivesTheSamePaths() {
+        double[] l = CorrelatedPaths.cholesky(COVARIANCE, N);
+        double[] exposures = {0.5, 0.3, 0.2};
+        int horizon = 5;
+        int paths = 5_001;
+
+        double[][] runs = new double[3][];
+        double[][] daily = new double[3][];
+        long[] seeds = {7, 7, 8};
+        for (int r = 0; r < 3; r++) {
+            runs[r] = new double[paths];
+            daily[r] = new double[horizon * 2_000];
+            CorrelatedPaths.simulate(MEAN, l, exposures, horizon, paths, seeds[r], runs[r], 2_000, daily[r]);
+        }
+
+        assertArrayEquals(runs[0], runs[1], 0.0);
+        assertArrayEquals(daily[0], daily[1], 0.0);
+        assertFalse(Arrays.equals(runs[0], runs[2]));
+    }
+
+    private static double[] lowerTimesTranspose(double[] l, int n) {
+        double[] product = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double s = 0.0;
+                for (int k = 0; k < n; k++) {
+                    s += l[i * n + k] * l[j * n + k];
+                }
+                product[i * n + j] = s;
+            }
+        }
+        return product;
+    }
+}
@@ -0,0 +1,110 @@
+package pmr.engine.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * countAbove / countBelow against a brute-force count over the same
+ * values, with many duplicates and across several buffer merges.
+ */
+class RankedValuesTest {
+
+    @Test
+    void emptyCountsNothing() {
+        RankedValues ranked = new RankedValues(new double[0], 0);
+        assertEquals(0, ranked.size());
+        assertEquals(0, ranked.countAbove(0.0));
+        assertEquals(0, ranked.countBelow(0.0));
+    }
+
+    @Test
+    void onlyTheFirstCountValuesAreTaken() {
+        double[] values = {3.0, 1.0, 2.0, 99.0, -99.0};
+        RankedValues ranked = new RankedValues(values, 3);
+        assertEquals(3, ranked.size());
+        assertEquals(0, ranked.countAbove(3.0));
+        assertEquals(0, ranked.countBelow(1.0));
+    }
+
+    @Test
+    void countsMatchBruteForceThroughMerges() {
+        Random random = new Random(17);
+
+        // Few distinct values, so most lookups land on a run of duplicates.
+        int initial = 3_000;
+        double[] values = new double[initial + 6_000];
+        for (int i = 0; i < initial; i++) {
+            values[i] = random.nextInt(200) / 4.0;
+        }
+        RankedValues ranked = new RankedValues(Arrays.copyOf(values, initial), initial);
+        int count = initial;
+        assertCounts(values, count, ranked);
+
+        // The buffer holds 1024 values at these sizes, so this crosses
+        // several merges; check just before, at and just after each one.
+        for (int i = 0; i < 6_000; i++) {
+            double value = random.nextInt(10) == 0
+                    ? values[random.nextInt(count)]
+                    : random.nextInt(240) / 4.0 - 5.0;
+            ranked.add(value);
+            values[count++] = value;
+
+            int intoBuffer = (count - initial) % 1024;
+            if (intoBuffer <= 1 || intoBuffer == 1023 || i % 97 == 0) {
+                assertCounts(values, count, ranked);
+            }
+        }
+        assertCounts(values, count, ranked);
+    }
+
+    @Test
+    void valuesEqualToTheProbeAreNeitherAboveNorBelow() {
+        double[] values = new double[2_000];
+        Arrays.fill(values, 1.5);
+        RankedValues ranked = new RankedValues(values, values.length);
+        for (int i = 0; i < 1_500; i++) {
+            ranked.add(1.5);
+        }
+
+        assertEquals(3_500, ranked.size());
+        assertEquals(0, ranked.countAbove(1.5));
+        assertEquals(0, ranked.countBelow(1.5));
+        assertEquals(3_500, ranked.countAbove(1.0));
+        assertEquals(3_500, ranked.countBelow(2.0));
+    }
+
+    private static void assertCounts(double[] values, int count, RankedValues ranked) {
+        assertEquals(count, ranked.size());
+
+        double[] probes = new double[count + 3];
+        System.arraycopy(values, 0, probes, 0, count);
+        probes[count] = Double.NEGATIVE_INFINITY;
+        probes[count + 1] = Double.POSITIVE_INFINITY;
+        probes[count + 2] = 0.125;
+
+        for (int p = 0; p < probes.length; p += Math.max(1, probes.length / 200)) {
+            assertProbe(values, count, ranked, probes[p]);
+        }
+        assertProbe(values, count, ranked, probes[count]);
+        assertProbe(values, count, ranked, probes[count + 1]);
+        assertProbe(values, count, ranked, probes[count + 2]);
+    }
+
+    private static void assertProbe(double[] values, int count, RankedValues ranked, double probe) {
+        int above = 0;
+        int below = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] > probe) {
+                above++;
+            } else if (values[i] < probe) {
+                below++;
+            }
+        }
+        assertEquals(above, ranked.countAbove(probe), "above " + probe + " at size " + count);
+        assertEquals(below, ranked.countBelow(probe), "below " + probe + " at size " + count);
+    }
+}